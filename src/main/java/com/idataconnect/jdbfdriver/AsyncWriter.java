@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The writer behind the asynchronous writes of a DBF. Writes are queued,
+ * and applied in order by a single thread through a cursor of its own. The
+ * thread takes whatever has been queued as one batch. Consecutive appends
+ * in a batch are written together, and consecutive changes to the same
+ * record are made as one edit, with a single record write and index
+ * update. The futures of a batch are completed once the whole batch is
+ * written, and synced if the table has a durability policy. Anything
+ * thrown while applying a batch fails the futures of that batch, and if
+ * the thread dies anyway, every write still queued, and every write
+ * submitted later, fails at once.
+ */
+final class AsyncWriter {
+
+    /** The largest number of writes taken as one batch. */
+    private static final int MAX_BATCH = 1024;
+
+    private enum Kind { APPEND, REPLACE, DELETE, STOP }
+
+    /** A queued write. */
+    private static final class Operation {
+        final Kind kind;
+        final int recordNumber;
+        final int fieldNumber;
+        final Object value;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        Object result;
+        Throwable failure;
+
+        Operation(Kind kind, int recordNumber, int fieldNumber, Object value) {
+            this.kind = kind;
+            this.recordNumber = recordNumber;
+            this.fieldNumber = fieldNumber;
+            this.value = value;
+        }
+    }
+
+    private final DBF cursor;
+    private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private boolean stopped;
+    /** Whether the thread has finished, normally or not. */
+    private boolean terminated;
+
+    /**
+     * Creates a writer, and starts its thread.
+     * @param cursor The cursor to write through, which the writer owns.
+     */
+    AsyncWriter(DBF cursor) {
+        this.cursor = cursor;
+        cursor.setSyncDeferred(true);
+        thread = new Thread(this::run, "jdbf-writer-" + cursor.getFile().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the cursor the writer writes through.
+     * @return The cursor.
+     */
+    DBF getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Queues the append of a record.
+     * @param row The values of the record, as for {@link DBF#appendAll}.
+     * @return A future completed with the number of the new record.
+     */
+    CompletableFuture<Object> append(Object[] row) {
+        return submit(new Operation(Kind.APPEND, 0, 0, row));
+    }
+
+    /**
+     * Queues the replacement of a field value.
+     * @param recordNumber The record to change.
+     * @param fieldNumber The number of the field to change.
+     * @param value The new value.
+     * @return A future completed with the previous value.
+     */
+    CompletableFuture<Object> replace(int recordNumber, int fieldNumber, Object value) {
+        return submit(new Operation(Kind.REPLACE, recordNumber, fieldNumber, value));
+    }
+
+    /**
+     * Queues the deletion of a record.
+     * @param recordNumber The record to delete.
+     * @return A future completed with <code>null</code>.
+     */
+    CompletableFuture<Object> delete(int recordNumber) {
+        return submit(new Operation(Kind.DELETE, recordNumber, 0, null));
+    }
+
+    private synchronized CompletableFuture<Object> submit(Operation op) {
+        if (stopped) {
+            op.future.completeExceptionally(new IOException("DBF is closed"));
+        } else if (terminated) {
+            op.future.completeExceptionally(new IOException("The writer thread has died"));
+        } else {
+            queue.add(op);
+        }
+        return op.future;
+    }
+
+    /**
+     * Applies every write queued so far, stops the thread and closes the
+     * cursor.
+     * @throws IOException If an I/O error occurs while closing the cursor.
+     */
+    void stop() throws IOException {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            queue.add(new Operation(Kind.STOP, 0, 0, null));
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // The index belongs to the cursor which started the writer.
+        cursor.setIndex(null);
+        cursor.close();
+    }
+
+    private void run() {
+        final List<Operation> batch = new ArrayList<>();
+        boolean running = true;
+        try {
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException ex) {
+                    // The thread only stops at a queued STOP, so every write
+                    // queued before it is applied. The interrupt is not
+                    // restored, as take() would then throw again at once.
+                    continue;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                if (batch.get(batch.size() - 1).kind == Kind.STOP) {
+                    batch.remove(batch.size() - 1);
+                    running = false;
+                }
+                try {
+                    apply(batch);
+                } catch (Throwable ex) {
+                    fail(batch, ex);
+                    complete(batch);
+                }
+                batch.clear();
+            }
+        } finally {
+            synchronized (this) {
+                terminated = true;
+            }
+            // Nothing can be queued now, so fail whatever never got applied.
+            fail(batch, new IOException("The writer thread has died"));
+            complete(batch);
+            final List<Operation> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            fail(remaining, new IOException("The writer thread has died"));
+            complete(remaining);
+        }
+    }
+
+    /**
+     * Applies a batch of writes, syncs them if required, and completes
+     * their futures.
+     */
+    private void apply(List<Operation> batch) {
+        int start = 0;
+        while (start < batch.size()) {
+            final Operation first = batch.get(start);
+            int end = start + 1;
+            if (first.kind == Kind.APPEND) {
+                while (end < batch.size() && batch.get(end).kind == Kind.APPEND) {
+                    end++;
+                }
+                append(batch.subList(start, end));
+            } else {
+                while (end < batch.size() && batch.get(end).kind != Kind.APPEND
+                        && batch.get(end).recordNumber == first.recordNumber) {
+                    end++;
+                }
+                edit(batch.subList(start, end));
+            }
+            start = end;
+        }
+
+        try {
+            cursor.syncPending();
+        } catch (Throwable ex) {
+            fail(batch, ex);
+        }
+
+        complete(batch);
+    }
+
+    /** Completes the futures of a batch with their results or failures. */
+    private static void complete(List<Operation> batch) {
+        for (Operation op : batch) {
+            if (op.failure != null) {
+                op.future.completeExceptionally(op.failure);
+            } else {
+                op.future.complete(op.result);
+            }
+        }
+    }
+
+    /** Appends a run of records with a single call to {@link DBF#appendRows}. */
+    private void append(List<Operation> run) {
+        final List<Object[]> rows = new ArrayList<>(run.size());
+        for (Operation op : run) {
+            rows.add((Object[]) op.value);
+        }
+        try {
+            final int firstRecord = cursor.appendRows(rows);
+            for (int i = 0; i < run.size(); i++) {
+                run.get(i).result = firstRecord + i;
+            }
+        } catch (Throwable ex) {
+            fail(run, ex);
+        }
+    }
+
+    /** Applies a run of changes to the same record as a single edit. */
+    private void edit(List<Operation> run) {
+        final int recordNumber = run.get(0).recordNumber;
+        try {
+            if (cursor.gotoRecord(recordNumber) != recordNumber) {
+                throw new IllegalArgumentException("Invalid record number: " + recordNumber);
+            }
+            cursor.beginEdit();
+            for (Operation op : run) {
+                try {
+                    if (op.kind == Kind.REPLACE) {
+                        op.result = cursor.replace(op.fieldNumber, op.value);
+                    } else {
+                        cursor.delete();
+                    }
+                } catch (Throwable ex) {
+                    op.failure = ex;
+                }
+            }
+            cursor.commit();
+        } catch (Throwable ex) {
+            if (cursor.isEditing()) {
+                cursor.cancelEdit();
+            }
+            fail(run, ex);
+        }
+    }
+
+    private static void fail(List<Operation> ops, Throwable failure) {
+        for (Operation op : ops) {
+            if (op.failure == null) {
+                op.failure = failure;
+            }
+        }
+    }
+}
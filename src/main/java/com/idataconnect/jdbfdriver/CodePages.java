@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Maps the language driver IDs stored in byte 29 of a DBF header to the
+ * character sets they stand for.
+ */
+final class CodePages {
+
+    /** The character set of each language driver ID, where known. */
+    private static final Charset[] CHARSETS = new Charset[256];
+
+    static {
+        map("IBM437", 0x01, 0x09, 0x0b, 0x0d, 0x0f, 0x11, 0x15, 0x18, 0x19, 0x1b);
+        map("IBM850", 0x02, 0x0a, 0x0e, 0x10, 0x12, 0x14, 0x16, 0x1a, 0x1d, 0x25, 0x37);
+        map("windows-1252", 0x03, 0x57, 0x58, 0x59);
+        map("x-MacRoman", 0x04);
+        map("IBM865", 0x08, 0x17, 0x66);
+        map("IBM863", 0x1c);
+        map("IBM852", 0x1f, 0x22, 0x23, 0x40, 0x64);
+        map("IBM860", 0x24);
+        map("IBM866", 0x26, 0x65);
+        map("IBM861", 0x67);
+        map("x-IBM737", 0x6a);
+        map("IBM857", 0x6b);
+        map("windows-31j", 0x13, 0x7b);
+        map("GBK", 0x4d, 0x7a);
+        map("x-windows-949", 0x4e, 0x79);
+        map("x-windows-950", 0x4f, 0x78);
+        map("x-windows-874", 0x50, 0x7c);
+        map("windows-1255", 0x7d);
+        map("windows-1256", 0x7e);
+        map("x-MacCyrillic", 0x96);
+        map("x-MacCentralEurope", 0x97);
+        map("x-MacGreek", 0x98);
+        map("windows-1250", 0xc8);
+        map("windows-1251", 0xc9);
+        map("windows-1254", 0xca);
+        map("windows-1253", 0xcb);
+        map("windows-1257", 0xcc);
+    }
+
+    private CodePages() {
+    }
+
+    private static void map(String charsetName, int... languageDriverIds) {
+        Charset charset;
+        try {
+            charset = Charset.forName(charsetName);
+        } catch (UnsupportedCharsetException ex) {
+            // Not every runtime ships every character set
+            return;
+        }
+        for (int languageDriverId : languageDriverIds) {
+            CHARSETS[languageDriverId] = charset;
+        }
+    }
+
+    /**
+     * Gets the character set for a language driver ID.
+     * @param languageDriverId the ID from the DBF header
+     * @return the character set, or <code>null</code> if the ID is 0 or
+     * unknown
+     */
+    static Charset charsetFor(int languageDriverId) {
+        return CHARSETS[languageDriverId & 0xff];
+    }
+
+    /**
+     * Gets a language driver ID which stands for the given character set.
+     * @param charset the character set
+     * @return the first ID which maps to the character set, or 0 if none
+     * does
+     */
+    static int languageDriverFor(Charset charset) {
+        for (int count = 1; count < CHARSETS.length; count++) {
+            if (charset.equals(CHARSETS[count])) {
+                return count;
+            }
+        }
+        return 0;
+    }
+}
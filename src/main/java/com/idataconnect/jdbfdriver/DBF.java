@@ -38,19 +38,27 @@ import java.io.*;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>The main class for DBF interaction.</p>
@@ -72,10 +80,62 @@ public class DBF {
 
     private static final Logger log = Logger.getLogger(DBF.class.getName());
 
+    /**
+     * Policies which decide when the header of an open DBF is re-read while
+     * moving the record pointer, in order to pick up changes made by other
+     * processes, such as appended records.
+     */
+    public enum HeaderRefreshPolicy {
+        /** Re-read the header on every move. This is the default. */
+        ALWAYS,
+        /** Never re-read the header, except through {@link DBF#refresh}. */
+        NEVER,
+        /**
+         * Re-read the header on a move if the header refresh interval has
+         * elapsed since the header was last read.
+         * @see DBF#setHeaderRefreshInterval
+         */
+        INTERVAL,
+        /**
+         * Re-read the header on a move if the size or the last modified time
+         * of the file has changed since the header was last read.
+         */
+        ON_CHANGE,
+    }
+
+    /**
+     * Policies which decide when changes to an open DBF are forced to disk.
+     * Each sync forces the DBF, its DBT and the active index together, so
+     * that a group of changes is made durable with one sync per file.
+     * @see DBF#setDurabilityPolicy
+     */
+    public enum DurabilityPolicy {
+        /** Never sync, except through {@link DBF#sync}. This is the default. */
+        NONE,
+        /** Sync after every change. */
+        EVERY_CHANGE,
+        /**
+         * Sync once the durability change count of changes have been made
+         * since the last sync.
+         * @see DBF#setDurabilityChanges
+         */
+        CHANGES,
+        /**
+         * Sync after a change if the durability interval has elapsed since
+         * the last sync.
+         * @see DBF#setDurabilityInterval
+         */
+        INTERVAL,
+        /** Sync on {@link DBF#commit} and {@link DBF#close} only. */
+        COMMIT,
+    }
+
     /** The current directory. */
     private static String currentDirectory = System.getProperty("user.home");
     /** Whether auto trim is enabled. */
     private static boolean autoTrimEnabled = true;
+    /** The character set of tables which do not specify a code page. */
+    private static Charset defaultCharset = Charset.defaultCharset();
     /** The DBT block size, default <em>8</em>. */
     private static int dbtBlockSize = 8;
     /** Whether file locking is enabled. Default <em>false</em>. */
@@ -90,12 +150,18 @@ public class DBF {
             new com.idataconnect.jdbfdriver.index.JSR233ExpressionEvaluator();
 
     // buf needs to be at least 512 bytes. A larger buffer can result in greater
-    // performance, but keep in mind that this buffer is never freed until
-    // the JVM exits.
+    // performance, but keep in mind that each open DBF holds its own buffer
+    // until it is garbage collected.
     /** The direct byte buffer for I/O. */
-    private static final ByteBuffer buf = ByteBuffer.allocateDirect(8192)
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(8192)
             .order(ByteOrder.LITTLE_ENDIAN);
-    private static final ReentrantLock threadLock = new ReentrantLock();
+    /**
+     * The lock guarding <code>buf</code> and the in-memory state of this DBF
+     * when thread safety is enabled. All file I/O is positional, so record
+     * reads do not need it. Cursors over the same file share the lock, while
+     * unrelated tables do not contend for it.
+     */
+    private final ReentrantLock threadLock;
     /** The file object for I/O. */
     private final File dbfFile;
     /** The random access file for I/O. */
@@ -104,12 +170,94 @@ public class DBF {
     private final DBFStructure structure;
     /** The current record number. */
     private int recordNumber;
-    /** The values in the current record. */
+    /**
+     * The values in the current record. Elements are <code>null</code> until
+     * the field is decoded from <code>recordData</code>.
+     */
     private DBFValue[] values;
+    /** The raw bytes of the current record, including the deleted flag. */
+    private byte[] recordData;
     /** Whether the current record is deleted. */
     private boolean currentRecordDeleted;
     /** The active index. */
     private DBFIndex index;
+    /** Whether records are read through a memory mapping of the file. */
+    private boolean memoryMapped;
+    /** The read only mapping of the file, or <code>null</code> if not mapped yet. */
+    private volatile MappedByteBuffer mappedBuffer;
+    /** The rollback generation when the file was mapped. */
+    private int mappedGeneration;
+    /** The rollback generation when the current record was read. */
+    private int seenGeneration;
+    /**
+     * The state shared by every cursor over the file. Its monitor guards
+     * the fields which are changed without the optional thread lock, and is
+     * always taken last, never while taking the thread lock.
+     */
+    private final Shared shared;
+    /** Whether this cursor has been closed. */
+    private boolean closed;
+    /** Whether changes to the current record are being held back. */
+    private boolean editing;
+    /** The raw bytes of the current record when the edit began. */
+    private byte[] editOriginal;
+    /** The index keys of the current record when the edit began. */
+    private Map<String, Object> editOldKeys;
+    /** Whether syncs required by the durability policy are left to the caller. */
+    private boolean syncDeferred;
+    /** When the header is re-read while moving the record pointer. */
+    private HeaderRefreshPolicy headerRefreshPolicy = HeaderRefreshPolicy.ALWAYS;
+    /** The interval for the {@link HeaderRefreshPolicy#INTERVAL} policy, in milliseconds. */
+    private long headerRefreshInterval = 1000;
+    /** The value of <code>System.nanoTime()</code> when the header was last read. */
+    private long headerReadTime;
+    /** The size of the file when the header was last read. */
+    private long headerReadFileSize;
+    /** The last modified time of the file when the header was last read. */
+    private long headerReadLastModified;
+
+    /**
+     * The state shared by a DBF and the cursors opened from it with
+     * {@link DBF#newCursor}.
+     */
+    private static final class Shared {
+        /** The paired DBT file, opened when first needed. */
+        MemoFile memoFile;
+        /** Recently read memo values, or null if the cache is disabled. */
+        volatile MemoCache memoCache;
+        /** The number of cursors which have not been closed yet. */
+        int openCursors = 1;
+        /** Whether changes to the header are held in memory until flushed. */
+        boolean headerWriteBehind;
+        /** The interval between timed header flushes, in milliseconds, or 0 for none. */
+        long headerFlushInterval = 1000;
+        /** Whether the header in memory has changes which are not written yet. */
+        boolean headerDirty;
+        /** The value of <code>System.nanoTime()</code> when the header was last flushed. */
+        long headerFlushTime;
+        /** When changes are forced to disk. */
+        DurabilityPolicy durabilityPolicy = DurabilityPolicy.NONE;
+        /** The number of changes between syncs for the {@link DurabilityPolicy#CHANGES} policy. */
+        int durabilityChanges = 100;
+        /** The interval for the {@link DurabilityPolicy#INTERVAL} policy, in milliseconds. */
+        long durabilityInterval = 1000;
+        /** The number of changes made since the last sync. */
+        int unsyncedChanges;
+        /** The value of <code>System.nanoTime()</code> when the files were last synced. */
+        long syncTime;
+        /** The writer of asynchronous writes, or null if it has not been started. */
+        AsyncWriter asyncWriter;
+        /** The journal of the transaction in progress, or null if there is none. */
+        Journal journal;
+        /** The DBF file within the journal. */
+        Journal.Target journalTarget;
+        /** The index taking part in the transaction, or null if there is none. */
+        DBFIndex journalIndex;
+        /** The cursor which began the transaction, or null if there is none. */
+        DBF journalOwner;
+        /** The number of transactions which have been rolled back. */
+        volatile int generation;
+    }
 
     /**
      * Sets the active index for this DBF.
@@ -139,6 +287,24 @@ public class DBF {
         this.dbfFile = dbfFile;
         this.randomAccessFile = file;
         this.structure = structure;
+        this.threadLock = new ReentrantLock();
+        this.shared = new Shared();
+    }
+
+    /**
+     * Creates a new cursor over the same file as the given DBF.
+     * @param source The DBF to share the file with.
+     */
+    private DBF(DBF source) {
+        this.dbfFile = source.dbfFile;
+        this.randomAccessFile = source.randomAccessFile;
+        this.structure = source.structure;
+        this.threadLock = source.threadLock;
+        this.shared = source.shared;
+        this.seenGeneration = source.shared.generation;
+        this.memoryMapped = source.memoryMapped;
+        this.headerRefreshPolicy = source.headerRefreshPolicy;
+        this.headerRefreshInterval = source.headerRefreshInterval;
     }
 
     /**
@@ -149,10 +315,28 @@ public class DBF {
      * @throws IOException If an I/O error occurs.
      */
     public static DBF use(File dbfFile) throws FileNotFoundException, IOException {
+        return use(dbfFile, false);
+    }
+
+    /**
+     * Opens the DBF with the specified file, optionally reading records
+     * through a memory mapping of the file instead of a channel read per
+     * record. The mapping is extended as the file grows, for example through
+     * {@link #appendBlank}. Writes are still performed through the file
+     * channel, and are visible through the mapping.
+     * @param dbfFile The file to open.
+     * @param memoryMapped Whether to read records through a memory mapping.
+     * @return A DBF instance, if the file is successfully opened.
+     * @throws FileNotFoundException If the DBF file could not be found.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static DBF use(File dbfFile, boolean memoryMapped) throws FileNotFoundException, IOException {
         RandomAccessFile file = new RandomAccessFile(dbfFile, "rw"
                 + (synchronousWritesEnabled ? "s" : ""));
         DBF dbf = new DBF(dbfFile, file, new DBFStructure());
+        dbf.memoryMapped = memoryMapped;
         dbf.readStructure();
+        dbf.recoverTransaction();
         dbf.gotoRecord(1);
         return dbf;
     }
@@ -166,10 +350,25 @@ public class DBF {
      * @throws IOException IF an I/O error occurs.
      */
     public static DBF use(String relativeDbfPath) throws FileNotFoundException, IOException {
+        return use(relativeDbfPath, false);
+    }
+
+    /**
+     * Opens the DBF with the given relative path, optionally reading records
+     * through a memory mapping of the file. The current directory will be
+     * used as the base directory for the file.
+     * @param relativeDbfPath The path, relative to the current directory.
+     * @param memoryMapped Whether to read records through a memory mapping.
+     * @return A DBF instance, if the file is successfully opened.
+     * @throws FileNotFoundException If the DBF file could not be found.
+     * @throws IOException IF an I/O error occurs.
+     * @see #use(File, boolean)
+     */
+    public static DBF use(String relativeDbfPath, boolean memoryMapped) throws FileNotFoundException, IOException {
         if (!relativeDbfPath.toLowerCase().endsWith(".dbf")) {
             relativeDbfPath += ".dbf";
         }
-        return use(new File(currentDirectory + File.separatorChar + relativeDbfPath));
+        return use(new File(currentDirectory + File.separatorChar + relativeDbfPath), memoryMapped);
     }
 
     /**
@@ -178,10 +377,95 @@ public class DBF {
      * @throws IOException If an I/O error occurs.
      */
     public void close() throws IOException {
+        if (!closed) {
+            final boolean rollBack;
+            synchronized (shared) {
+                // Only the cursor which began the transaction, or the last
+                // cursor left, ends it.
+                rollBack = shared.journal != null
+                        && (shared.journalOwner == this || shared.openCursors == 1);
+            }
+            if (rollBack) {
+                rollback();
+            } else if (editing) {
+                commit();
+            }
+        }
+        AsyncWriter writer = null;
+        synchronized (shared) {
+            if (!closed && shared.asyncWriter != null && shared.asyncWriter.getCursor() != this
+                    && (shared.openCursors == 2
+                    || (index != null && shared.asyncWriter.getCursor().getIndex() == index))) {
+                // Only the writer's cursor is left besides this one, or the
+                // writer maintains the index which this cursor is closing.
+                writer = shared.asyncWriter;
+                shared.asyncWriter = null;
+            }
+        }
+        if (writer != null) {
+            writer.stop();
+        }
+        if (!closed) {
+            if (shared.durabilityPolicy != DurabilityPolicy.NONE && shared.unsyncedChanges > 0) {
+                syncFiles();
+            } else {
+                flushHeader();
+            }
+        }
+        final boolean lastCursor;
+        synchronized (shared) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lastCursor = --shared.openCursors == 0;
+        }
         if (index != null) {
             index.close();
         }
-        randomAccessFile.close();
+        mappedBuffer = null;
+        // The files stay open until the last cursor over them is closed.
+        if (lastCursor) {
+            if (shared.memoFile != null) {
+                shared.memoFile.close();
+                shared.memoFile = null;
+            }
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Opens another cursor over this DBF, positioned on the first record.
+     * The cursor has its own current record, values and active index, but
+     * shares the open file, the structure, the DBT and the memo cache with
+     * this DBF and with every other cursor opened from it. This is much
+     * cheaper than opening the file again, and writes made through one
+     * cursor are seen by the others the next time they read a record.
+     * <p>
+     * The file is closed when the last of the DBF and its cursors is
+     * closed. Cursors may be moved independently on different threads, but
+     * writing through more than one of them at a time requires thread
+     * safety to be enabled.
+     * </p>
+     * @return The new cursor.
+     * @throws IOException If this DBF is closed, or an I/O error occurs.
+     * @see #setThreadSafetyEnabled(boolean)
+     */
+    public DBF newCursor() throws IOException {
+        synchronized (shared) {
+            if (closed || shared.openCursors == 0) {
+                throw new IOException("DBF is closed");
+            }
+            shared.openCursors++;
+        }
+        DBF cursor = new DBF(this);
+        try {
+            cursor.gotoRecord(1);
+        } catch (IOException | RuntimeException ex) {
+            cursor.close();
+            throw ex;
+        }
+        return cursor;
     }
 
     /**
@@ -196,11 +480,16 @@ public class DBF {
             }
             buf.clear();
             FileChannel channel = randomAccessFile.getChannel();
-            channel.position(0);
             if (isFileLockingEnabled()) {
                 lock = channel.lock(0, 32, true);
             }
-            while (buf.position() < 32 && channel.read(buf) != -1) {}
+            // The header is read with positional reads, advancing this
+            // rather than the channel position.
+            long readPosition = 0;
+            int numRead;
+            while (buf.position() < 32 && (numRead = channel.read(buf, readPosition)) != -1) {
+                readPosition += numRead;
+            }
             buf.flip();
             if (buf.remaining() < 33) {
                 throw new IOException("File too small to be a valid DBF");
@@ -242,9 +531,10 @@ public class DBF {
             structure.setDataEncrypted(buf.get() != 0x00); // 16
             // 16-28
             buf.position(buf.position() + 12); // Skip reserved
-            structure.setMdxPaired(buf.get() != 0x00); // 25
-            // 29, 30, 31
-            buf.position(buf.position() + 3); // Skip code page byte and 2 reserved bytes
+            structure.setMdxPaired(buf.get() != 0x00); // 28
+            structure.setCodePage(buf.get()); // 29
+            // 30, 31
+            buf.position(buf.position() + 2); // Skip reserved
 
             List<DBFField> fields = new ArrayList<DBFField>(32);
             // Header fields
@@ -255,11 +545,11 @@ public class DBF {
                         buf.clear();
 
                         // Read at least one byte
-                        int numRead;
-                        while ((numRead = channel.read(buf)) == 0) {}
+                        while ((numRead = channel.read(buf, readPosition)) == 0) {}
                         if (numRead == -1) {
                             throw new IOException("End of file encountered while reading header field");
                         }
+                        readPosition += numRead;
 
                         buf.flip();
                     }
@@ -310,17 +600,27 @@ public class DBF {
                     buf.clear();
 
                     // Read at least one byte
-                    int numRead;
-                    while ((numRead = channel.read(buf)) == 0) {
+                    while ((numRead = channel.read(buf, readPosition)) == 0) {
                     }
                     if (numRead == -1) {
                         throw new IOException("End of file encountered while reading header structure");
                     }
+                    readPosition += numRead;
 
                     buf.flip();
                 }
             } while (buf.get(buf.position()) != 0x0d); // Keep reading header structure until terminator is encountered
-            structure.setFields(fields);
+            // The structure is shared by every cursor, so only replace the
+            // fields, and with them the compiled layout, when they changed.
+            if (!structure.hasSameFields(fields)) {
+                structure.setFields(fields);
+            }
+
+            headerReadTime = System.nanoTime();
+            if (headerRefreshPolicy == HeaderRefreshPolicy.ON_CHANGE) {
+                headerReadFileSize = channel.size();
+                headerReadLastModified = dbfFile.lastModified();
+            }
         } finally {
             if (isThreadSafetyEnabled()) {
                 threadLock.unlock();
@@ -351,11 +651,8 @@ public class DBF {
                 buf.clear();
                 buf.put((byte) 0x0d); // end of header
                 buf.put((byte) 0x1a); // end of file
-                channel.position(structure.getHeaderLength() - 1);
                 buf.flip();
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
+                writeFully(buf, structure.getHeaderLength() - 1);
             }
 
             if (structure.getLastUpdated() == null) {
@@ -367,8 +664,6 @@ public class DBF {
                 structure.setLastUpdated(date);
             }
 
-            channel.position(0);
-
             FileLock lock = null;
             if (isFileLockingEnabled()) {
                 lock = channel.lock(0, 32, false);
@@ -414,19 +709,16 @@ public class DBF {
                 buf.put((byte) (structure.isMdxPaired() ? 1 : 0));
 
                 // Code page byte
-                buf.put((byte) 0);
+                buf.put((byte) structure.getCodePage());
 
                 // Skip over reserved bytes
                 buf.position(buf.position() + 2);
 
                 buf.flip();
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
-
-                assert(channel.position() == 32);
+                writeFully(buf, 0);
 
                 // Field structure
+                long fieldPosition = 32;
                 for (DBFField field : structure.getFields()) {
                     buf.clear();
 
@@ -480,9 +772,8 @@ public class DBF {
                     assert(buf.position() == 32);
 
                     buf.flip();
-                    while (buf.hasRemaining()) {
-                        channel.write(buf);
-                    }
+                    writeFully(buf, fieldPosition);
+                    fieldPosition += 32;
                 }
             } finally {
                 if (isFileLockingEnabled()) {
@@ -514,6 +805,28 @@ public class DBF {
         DBF.currentDirectory = currentDirectory;
     }
 
+    /**
+     * Gets the character set used for tables whose header does not specify
+     * a known code page.
+     * @return The default character set.
+     */
+    public static Charset getDefaultCharset() {
+        return defaultCharset;
+    }
+
+    /**
+     * Sets the character set used for tables whose header does not specify
+     * a known code page. This is the platform's default character set unless
+     * it is changed.
+     * @param defaultCharset The default character set.
+     */
+    public static void setDefaultCharset(Charset defaultCharset) {
+        if (defaultCharset == null) {
+            throw new IllegalArgumentException("Default character set must not be null");
+        }
+        DBF.defaultCharset = defaultCharset;
+    }
+
     /**
      * Gets whether auto trim of character fields is enabled.
      * @return Whether auto trim of character fields is enabled.
@@ -586,6 +899,7 @@ public class DBF {
      * performance.
      * @param synchronousWritesEnabled Whether syncronous writes are to be
      * enabled.
+     * @see #setDurabilityPolicy
      */
     public static void setSynchronousWritesEnabled(boolean synchronousWritesEnabled) {
         DBF.synchronousWritesEnabled = synchronousWritesEnabled;
@@ -652,6 +966,7 @@ public class DBF {
      * @return whether the current record is deleted.
      */
     public boolean deleted() {
+        checkGeneration();
         return currentRecordDeleted;
     }
 
@@ -665,9 +980,15 @@ public class DBF {
      * @throws IOException If an I/O error occurs
      */
     public int gotoRecord(int recordNumber) throws IOException {
+        rolledBackElsewhere();
+        // Leaving a record, even for itself, ends its edit.
+        if (editing) {
+            commit();
+        }
+
         // Re-read the header to obtain the number of records, in case another
         // process changed it.
-        readStructure();
+        refreshIfRequired();
 
         currentRecordDeleted = false;
 
@@ -684,6 +1005,234 @@ public class DBF {
         return this.recordNumber;
     }
 
+    /**
+     * Re-reads the header of the DBF, picking up changes made by other
+     * processes, such as the number of records. This can be used to refresh
+     * the header explicitly, regardless of the header refresh policy. Any
+     * header changes held back by write-behind are flushed first.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void refresh() throws IOException {
+        flushHeader();
+        readStructure();
+    }
+
+    /**
+     * Re-reads the header of the DBF if the header refresh policy requires
+     * it at this time.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void refreshIfRequired() throws IOException {
+        if (shared.headerWriteBehind) {
+            // The header in memory is newer than the one on disk.
+            return;
+        }
+        switch (headerRefreshPolicy) {
+            case ALWAYS:
+                readStructure();
+                break;
+            case INTERVAL:
+                if (System.nanoTime() - headerReadTime >= headerRefreshInterval * 1_000_000L) {
+                    readStructure();
+                }
+                break;
+            case ON_CHANGE:
+                if (randomAccessFile.getChannel().size() != headerReadFileSize
+                        || dbfFile.lastModified() != headerReadLastModified) {
+                    readStructure();
+                }
+                break;
+            case NEVER:
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Gets the policy which decides when the header is re-read while moving
+     * the record pointer.
+     * @return The header refresh policy.
+     */
+    public HeaderRefreshPolicy getHeaderRefreshPolicy() {
+        return headerRefreshPolicy;
+    }
+
+    /**
+     * Sets the policy which decides when the header is re-read while moving
+     * the record pointer. The default is {@link HeaderRefreshPolicy#ALWAYS},
+     * which is the safest choice when other processes may append to the
+     * table, but costs a header read on every move.
+     * @param headerRefreshPolicy The header refresh policy.
+     * @throws IOException If an I/O error occurs while recording the state
+     * of the file for the new policy.
+     */
+    public void setHeaderRefreshPolicy(HeaderRefreshPolicy headerRefreshPolicy) throws IOException {
+        if (headerRefreshPolicy == null) {
+            throw new IllegalArgumentException("Header refresh policy must not be null");
+        }
+        this.headerRefreshPolicy = headerRefreshPolicy;
+        if (headerRefreshPolicy == HeaderRefreshPolicy.ON_CHANGE) {
+            readStructure();
+        }
+    }
+
+    /**
+     * Gets the interval used by the {@link HeaderRefreshPolicy#INTERVAL}
+     * policy.
+     * @return The header refresh interval, in milliseconds.
+     */
+    public long getHeaderRefreshInterval() {
+        return headerRefreshInterval;
+    }
+
+    /**
+     * Sets the interval used by the {@link HeaderRefreshPolicy#INTERVAL}
+     * policy. The default is one second.
+     * @param headerRefreshInterval The header refresh interval, in milliseconds.
+     */
+    public void setHeaderRefreshInterval(long headerRefreshInterval) {
+        if (headerRefreshInterval < 0) {
+            throw new IllegalArgumentException("Header refresh interval must not be negative");
+        }
+        this.headerRefreshInterval = headerRefreshInterval;
+    }
+
+    /**
+     * Gets whether header write-behind is enabled.
+     * @return Whether header write-behind is enabled.
+     * @see #setHeaderWriteBehindEnabled
+     */
+    public boolean isHeaderWriteBehindEnabled() {
+        return shared.headerWriteBehind;
+    }
+
+    /**
+     * Sets whether header write-behind is enabled. Normally the last update
+     * date and the number of records in the header are written to disk by
+     * every change, and appending reads the number of records back from disk
+     * first. With write-behind, they are kept in memory and written with a
+     * single header write by {@link #flushHeader}, which happens on
+     * {@link #commit}, {@link #sync}, {@link #refresh} and {@link #close},
+     * and after each change once the header flush interval has elapsed.
+     * <p>
+     * Because the header in memory is taken to be current, it is not re-read
+     * while moving the record pointer, whatever the header refresh policy.
+     * Write-behind should therefore only be enabled when no other process
+     * appends to the table. The setting is shared by every cursor over the
+     * file. Disabling write-behind flushes the header.
+     * </p>
+     * @param headerWriteBehind Whether to enable header write-behind.
+     * @throws IOException If an I/O error occurs while flushing the header.
+     * @see #setHeaderFlushInterval
+     */
+    public void setHeaderWriteBehindEnabled(boolean headerWriteBehind) throws IOException {
+        if (!headerWriteBehind) {
+            flushHeader();
+        }
+        shared.headerFlushTime = System.nanoTime();
+        shared.headerWriteBehind = headerWriteBehind;
+    }
+
+    /**
+     * Gets the interval after which header changes held back by write-behind
+     * are flushed.
+     * @return The header flush interval, in milliseconds, or <em>0</em> if
+     * the header is only flushed explicitly.
+     */
+    public long getHeaderFlushInterval() {
+        return shared.headerFlushInterval;
+    }
+
+    /**
+     * Sets the interval after which header changes held back by write-behind
+     * are flushed. The interval is checked when the header changes, so an
+     * idle table is not flushed until the next change or an explicit flush.
+     * The default is one second.
+     * @param headerFlushInterval The header flush interval, in milliseconds,
+     * or <em>0</em> to only flush the header explicitly.
+     */
+    public void setHeaderFlushInterval(long headerFlushInterval) {
+        if (headerFlushInterval < 0) {
+            throw new IllegalArgumentException("Header flush interval must not be negative");
+        }
+        shared.headerFlushInterval = headerFlushInterval;
+    }
+
+    /**
+     * Gets the policy which decides when changes are forced to disk.
+     * @return The durability policy.
+     */
+    public DurabilityPolicy getDurabilityPolicy() {
+        return shared.durabilityPolicy;
+    }
+
+    /**
+     * Sets the policy which decides when changes are forced to disk. The
+     * default is {@link DurabilityPolicy#NONE}, which leaves it to the
+     * operating system. Other than with {@link DurabilityPolicy#NONE},
+     * changes which have not been synced yet are also synced on close.
+     * <p>
+     * Unlike synchronous writes, which sync every single write to every
+     * file, a policy syncs the DBF, the DBT and the active index together
+     * once per group of changes, which bounds the changes that can be lost
+     * at a fraction of the cost. Synchronous writes should be disabled when
+     * a policy is used. The policy is shared by every cursor over the file.
+     * </p>
+     * @param durabilityPolicy The durability policy.
+     * @see #setSynchronousWritesEnabled
+     */
+    public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy) {
+        if (durabilityPolicy == null) {
+            throw new IllegalArgumentException("Durability policy must not be null");
+        }
+        shared.syncTime = System.nanoTime();
+        shared.durabilityPolicy = durabilityPolicy;
+    }
+
+    /**
+     * Gets the number of changes between syncs for the
+     * {@link DurabilityPolicy#CHANGES} policy.
+     * @return The number of changes between syncs.
+     */
+    public int getDurabilityChanges() {
+        return shared.durabilityChanges;
+    }
+
+    /**
+     * Sets the number of changes between syncs for the
+     * {@link DurabilityPolicy#CHANGES} policy. The default is 100.
+     * @param durabilityChanges The number of changes between syncs.
+     */
+    public void setDurabilityChanges(int durabilityChanges) {
+        if (durabilityChanges < 1) {
+            throw new IllegalArgumentException("Durability change count must be at least 1");
+        }
+        shared.durabilityChanges = durabilityChanges;
+    }
+
+    /**
+     * Gets the interval used by the {@link DurabilityPolicy#INTERVAL}
+     * policy.
+     * @return The durability interval, in milliseconds.
+     */
+    public long getDurabilityInterval() {
+        return shared.durabilityInterval;
+    }
+
+    /**
+     * Sets the interval used by the {@link DurabilityPolicy#INTERVAL}
+     * policy. The interval is checked when a change is made, so changes to
+     * an idle table are not synced until the next change, an explicit sync
+     * or close. The default is one second.
+     * @param durabilityInterval The durability interval, in milliseconds.
+     */
+    public void setDurabilityInterval(long durabilityInterval) {
+        if (durabilityInterval < 0) {
+            throw new IllegalArgumentException("Durability interval must not be negative");
+        }
+        shared.durabilityInterval = durabilityInterval;
+    }
+
     /**
      * Skips forward 1 record.
      * @return The new record number.
@@ -845,7 +1394,7 @@ public class DBF {
         File mdxFile = new File(mdxPath);
 
         if (mdxFile.exists()) {
-            return MDX.open(mdxFile);
+            return MDX.open(mdxFile, threadLock);
         } else {
             // Get base name for the MDX internal header
             String name = dbfFile.getName();
@@ -875,294 +1424,761 @@ public class DBF {
                 DBFField field = i.next();
                 values[count] = field.getDefaultValue();
             }
+            if (recordData == null || recordData.length != structure.getRecordLength()) {
+                recordData = new byte[structure.getRecordLength()];
+            }
+            Arrays.fill(recordData, (byte) ' ');
         } else {
-            try {
-                if (isThreadSafetyEnabled()) {
-                    threadLock.lock();
-                }
-                if (bof()) {
-                    recordNumber = 1;
-                }
-                FileChannel channel = randomAccessFile.getChannel();
-                channel.position((long) structure.getHeaderLength() + (recordNumber - 1) * structure.getRecordLength());
-                FileLock lock = null;
-                if (isFileLockingEnabled()) {
-                    lock = channel.lock((long) structure.getHeaderLength() + (recordNumber - 1) * structure.getRecordLength(), (long) structure.getRecordLength(), true);
-                }
-                ByteBuffer recordBuffer;
-                try {
-                    buf.clear();
-                    if (structure.getRecordLength() <= buf.remaining()) {
-                        // The record will fit in the buffer
-                        while (buf.position() < structure.getRecordLength()) {
-                            if (channel.read(buf) == -1) {
-                                throw new IOException("End of file encountered while reading record");
-                            }
-                        }
-
-                        recordBuffer = buf;
-                    } else {
-                        // The record won't fit in the buffer, so we need to allocate
-                        // a temporary buffer for the record.
-                        recordBuffer = ByteBuffer.allocate(structure.getRecordLength());
-
-                        while (recordBuffer.position() < structure.getRecordLength()) {
-                            buf.clear();
-                            if (buf.remaining() > recordBuffer.remaining()) {
-                                buf.limit(recordBuffer.remaining());
-                            }
-                            switch (channel.read(buf)) {
-                                case -1: // EOF
-                                    throw new IOException("End of file encountered while reading record");
-                                case 0:
-                                    break;
-                                default:
-                                    buf.flip();
-                                    recordBuffer.put(buf);
-                            }
-                        }
-                    }
-                } finally {
-                    if (lock != null) {
-                        lock.release();
-                    }
-                }
-
-                recordBuffer.flip();
-                currentRecordDeleted = recordBuffer.get() == '*';
-                Iterator<DBFField> i = structure.getFields().iterator();
-                for (int count = 0; count < structure.getFields().size(); count++) {
-                    DBFField currentField = i.next();
-                    byte[] fieldData = new byte[currentField.getFieldLength()];
-                    recordBuffer.get(fieldData);
-                    switch (currentField.getFieldType()) {
-                        case C:
-                            if (isAutoTrimEnabled()) {
-                                values[count] = new DBFValue(currentField, new String(fieldData).trim());
-                            } else {
-                                values[count] = new DBFValue(currentField, new String(fieldData));
-                            }
-                            break;
-                        case M:
-                        case B:
-                        case G:
-                            String dataString = new String(fieldData, StandardCharsets.UTF_8).trim();
-                            if (dataString.length() == 0) {
-                                values[count] = new DBFValue(currentField, "");
-                            } else {
-                                // buf is busy at this point, so allocate another
-                                // one that is large enough to read the header
-                                // and possibly the field's value (if large enough).
-                                // headerBuf must be at least 22 bytes.
-                                ByteBuffer headerBuf = ByteBuffer.allocate(512).order(ByteOrder.LITTLE_ENDIAN);
-                                int blockNumber = Integer.parseInt(dataString);
-                                File dbtFile = getDbtFile();
-                                RandomAccessFile dbtRandomAccessFile = new RandomAccessFile(dbtFile, "r");
-                                try {
-                                    FileChannel dbtChannel = dbtRandomAccessFile.getChannel();
-
-                                    // Read the complete header into headerBuf
-                                    dbtChannel.position(0);
-                                    headerBuf.limit(64);
-                                    do {
-                                        if (dbtChannel.read(headerBuf) == -1) {
-                                            // EOF
-                                            throw new IOException("End of file encountered while reading DBT header");
-                                        }
-                                    } while (headerBuf.hasRemaining());
-
-                                    headerBuf.position(0);
-
-                                    // Read the block length
-                                    headerBuf.position(20);
-                                    int blockLength = headerBuf.getShort() & 0xffff; // Unsigned short
-                                    if (blockLength < 64) {
-                                        throw new IOException("DBT appears to be corrupt. Block length (" + blockLength + ") < 64 blocks (512 bytes)");
-                                    }
-
-                                    // Move to the block where the memo field is stored.
-                                    dbtChannel.position((long) blockNumber * blockLength);
-                                    headerBuf.clear();
-                                    headerBuf.limit(8);
-                                    while (headerBuf.position() < 8) {
-                                        if (dbtChannel.read(headerBuf) == -1) {
-                                            throw new IOException("End of file encountered while reading DBT block header");
-                                        }
-                                    }
-                                    headerBuf.position(0);
-                                    byte byte1 = headerBuf.get();
-                                    byte byte2 = headerBuf.get();
-                                    byte byte3 = headerBuf.get();
-                                    byte byte4 = headerBuf.get();
-                                    if (byte1 != (byte) 0xff || byte2 != (byte) 0xff || byte3 != (byte) 0x08 || byte4 != (byte) 0x00) {
-                                        throw new IOException("DBT appears to be corrupt. Block header start: " + String.format("0x%02x 0x%02x 0x%02x 0x%02x", byte1, byte2, byte3, byte4));
-                                    }
-                                    int valueLength = headerBuf.getInt(); // 32-bit unsigned that won't overflow
-                                    valueLength -= 8; // Remove 8 byte header length
-
-                                    // Acquire shared lock
-                                    if (isFileLockingEnabled()) {
-                                        dbtChannel.lock((long) blockNumber * blockLength, (long) valueLength + 8, true);
-                                    }
-
-                                    // Use headerBuf if it's large enough. Otherwise
-                                    // allocate a new buffer.
-                                    ByteBuffer dbtRecordBuffer;
-                                    if (headerBuf.capacity() < valueLength) {
-                                        dbtRecordBuffer = ByteBuffer.allocate(valueLength);
-                                    } else {
-                                        headerBuf.position(0);
-                                        headerBuf.limit(valueLength);
-                                        dbtRecordBuffer = headerBuf;
-                                    }
-                                    while (dbtRecordBuffer.hasRemaining()) {
-                                        dbtChannel.read(dbtRecordBuffer);
-                                    }
-                                    dbtRecordBuffer.flip();
-                                    byte[] valueBytes = new byte[valueLength];
-                                    dbtRecordBuffer.get(valueBytes);
-                                    values[count] = new DBFValue(currentField, new String(valueBytes));
-                                } finally {
-                                    try {
-                                        dbtRandomAccessFile.close();
-                                    } catch (IOException ex) {}
-                                }
-                            }
-                            break;
-                        case N:
-                        case F:
-                            dataString = new String(fieldData).trim();
-                            if (dataString.length() == 0) {
-                                values[count] = new DBFValue(currentField, currentField.getDefaultValue().getValue());
-                            } else {
-                                values[count] = new DBFValue(currentField, new BigDecimal(dataString));
-                            }
-                            break;
-                        case D:
-                            if (fieldData.length == 0 || fieldData[0] == ' ') {
-                                 // Blank date
-                                values[count] = new DBFValue(currentField, new DBFDate(0, 0, 0));
-                            } else {
-                                int year = Integer.parseInt(new String(fieldData, 0, 4));
-                                int month = Integer.parseInt(new String(fieldData, 4, 2));
-                                int day = Integer.parseInt(new String(fieldData, 6, 2));
-                                values[count] = new DBFValue(currentField, new DBFDate(month, day, year));
-                            }
-                            break;
-                        case L:
-                            values[count] = new DBFValue(currentField, (fieldData[0] == 'y' || fieldData[0] == 'Y' || fieldData[0] == 't' || fieldData[0] == 'T') ? Boolean.TRUE : Boolean.FALSE);
-                            break;
-                        case U:
-                        default:
-                            values[count] = new DBFValue(currentField, "");
-                            break;
-                    }
-                }
-            } finally {
-                if (isThreadSafetyEnabled()) {
-                    threadLock.unlock();
-                }
+            if (bof()) {
+                recordNumber = 1;
             }
+            if (recordData == null || recordData.length != structure.getRecordLength()) {
+                recordData = new byte[structure.getRecordLength()];
+            }
+            // A positional read leaves the channel position alone, so readers
+            // of the same file do not need to exclude each other.
+            readRecords(recordNumber, recordData, structure.getRecordLength());
+            currentRecordDeleted = recordData[0] == '*';
+
+            // Fields are decoded from the raw record when they are first
+            // requested, and memo values are only read from the DBT then.
+            Arrays.fill(values, null);
         }
     }
 
     /**
-     * Gets a file object pointing to the DBT file which would be paired with
-     * this DBF file.
-     * @return a <code>File</code> instance
+     * Creates the value of a memo field, which is read from the DBT only
+     * when it is requested.
+     * @param currentField The memo field.
+     * @param data The raw record bytes.
+     * @param offset The offset of the field within <code>data</code>.
+     * @return The value of the memo field, which is blank if the record
+     * has no DBT block attached for the field.
      */
-    protected File getDbtFile() {
-        return new File(dbfFile.getAbsolutePath().substring(0, dbfFile.getAbsolutePath().length() - 3) + "dbt");
+    DBFValue memoValue(DBFField currentField, byte[] data, int offset) {
+        int blockNumber = (int) FieldDecoder.parseLong(data, offset, currentField.getFieldLength());
+        if (blockNumber == 0) {
+            return currentField.getDefaultValue();
+        }
+        return new MemoValue(this, currentField, blockNumber);
     }
 
-    /*
-     * Gets a file object pointing to the production MDX file which would be
-     * paired with this DBF file.
-     * @return a <code>File</code> instance
+    /**
+     * Reads a memo value from the DBT, or from the memo cache if it is
+     * enabled and holds the value. Memo text is decoded, while binary and
+     * OLE values are kept as they are stored.
+     * @param fieldType The type of the memo field.
+     * @param blockNumber The block number of the value.
+     * @return A <code>String</code> for memo text, or a byte array.
+     * @throws IOException If an I/O error occurs.
      */
-    protected File getProductionMdxFile() {
-        return new File(dbfFile.getAbsolutePath().substring(0, dbfFile.getAbsolutePath().length() - 3) + "mdx");
+    Object readMemo(DBFField.FieldType fieldType, int blockNumber) throws IOException {
+        final MemoCache cache = shared.memoCache;
+        long stamp = 0;
+        if (cache != null) {
+            Object value = cache.get(blockNumber);
+            if (value != null) {
+                return value;
+            }
+            stamp = cache.stamp();
+        }
+        byte[] valueBytes = getMemoFile(false).read(blockNumber);
+        Object value = fieldType == DBFField.FieldType.M
+                ? structure.getTextCodec().decode(valueBytes, 0, valueBytes.length) : valueBytes;
+        if (cache != null) {
+            // Not cached if the block was rewritten while it was being read.
+            cache.put(blockNumber, value, stamp);
+        }
+        return value;
     }
 
     /**
-     * Gets the field number by the field's name. If the field doesn't exist,
-     * 0 is returned.
-     * @param fieldName The name of the field.
-     * @return The field's number if it exists, or 0 if not.
+     * Drops a memo value which has been rewritten or moved from the memo
+     * cache.
+     * @param blockNumber The block number of the value.
      */
-    public int getFieldNumberByName(String fieldName) {
-        Iterator<DBFField> i = getStructure().getFields().iterator();
-        for (int count = 0; i.hasNext(); count++) {
-            DBFField f = i.next();
-            if (f.getFieldName().equalsIgnoreCase(fieldName)) {
-                return count + 1;
-            }
+    private void invalidateMemo(int blockNumber) {
+        final MemoCache cache = shared.memoCache;
+        if (cache != null && blockNumber > 0) {
+            cache.invalidate(blockNumber);
         }
-
-        return 0;
     }
 
     /**
-     * A convenience method for getting a string value for the specified field.
-     * This is equivelant to calling <code>getValue(fieldNumber).getString()</code>.
-     * Field numbers start at 1.
-     * @param fieldNumber The number of the field.
-     * @return The field's on disk value.
+     * Sets the size of the memo cache, which keeps recently read memo
+     * values in memory so that reading them again does not touch the DBT.
+     * The cache is sized in bytes of memo data, and the least recently used
+     * values are dropped to stay within it. Values written through this DBF
+     * or any of its cursors are dropped from the cache, which they all
+     * share, but the cache cannot see changes made by other processes, or
+     * by other DBF instances. The cache is disabled by default. Changing its
+     * size empties it.
+     * @param maximumBytes The size of the cache, or 0 to disable it.
      */
-    public String getString(int fieldNumber) {
-        return getValue(fieldNumber).getString();
+    public void setMemoCacheSize(long maximumBytes) {
+        if (maximumBytes < 0) {
+            throw new IllegalArgumentException("Memo cache size must not be negative");
+        }
+        shared.memoCache = maximumBytes == 0 ? null : new MemoCache(maximumBytes);
     }
 
     /**
-     * A convenience method for getting a string value for the specified field.
-     * This is equivalent to calling <code>getValue(fieldName).getString()</code>.
-     * @param fieldName The name of the field.
-     * @return The field's on disk value.
+     * Gets the size of the memo cache.
+     * @return The size of the cache in bytes, or 0 if it is disabled.
+     * @see #setMemoCacheSize(long)
      */
-    public String getString(String fieldName) {
-        return getValue(fieldName).getString();
+    public long getMemoCacheSize() {
+        final MemoCache cache = shared.memoCache;
+        return cache == null ? 0 : cache.getMaximumBytes();
     }
 
     /**
-     * A convenience method for getting an int value for the specified field.
-     * This is equivalent to calling <code>getValue(fieldNumber).getInt()</code>.
-     * Field numbers start at 1.
-     * @param fieldNumber The number of the field.
-     * @return The field's on disk value.
+     * Opens a stream over the value of a memo field of the current record,
+     * which reads the value from the DBT a piece at a time. This avoids
+     * holding large binary values in memory, and never decodes them as
+     * characters.
+     * @param fieldNumber The number of the memo field.
+     * @return A stream of the bytes of the value, which is empty if the
+     * field is blank.
+     * @throws IllegalStateException If the field is not a memo field.
+     * @throws IOException If an I/O error occurs.
      */
-    public int getInt(int fieldNumber) {
-        return getValue(fieldNumber).getInt();
+    public InputStream openMemoStream(int fieldNumber) throws IOException {
+        checkGeneration();
+        DBFField field = requireFieldType(fieldNumber, "openMemoStream()",
+                DBFField.FieldType.M, DBFField.FieldType.B, DBFField.FieldType.G);
+        int blockNumber = (int) FieldDecoder.parseLong(recordData,
+                structure.getFieldOffset(fieldNumber - 1), field.getFieldLength());
+        if (blockNumber == 0) {
+            return InputStream.nullInputStream();
+        }
+        return getMemoFile(false).openInputStream(blockNumber);
     }
 
     /**
-     * A convenience method for getting an int value for the specified field.
-     * This is equivalent to calling <code>getValue(fieldName).getInt()</code>.
-     * @param fieldName The name of the field.
-     * @return The field's on disk value.
+     * Opens a stream over the value of a memo field of the current record.
+     * @param fieldName The name of the memo field.
+     * @return A stream of the bytes of the value, which is empty if the
+     * field is blank.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a memo field.
+     * @throws IOException If an I/O error occurs.
+     * @see #openMemoStream(int)
      */
-    public int getInt(String fieldName) {
-        return getValue(fieldName).getInt();
+    public InputStream openMemoStream(String fieldName) throws IOException {
+        return openMemoStream(requireFieldNumber(fieldName));
     }
 
     /**
-     * A convenience method for getting a double value for the specified field.
-     * This is equivalent to calling <code>getValue(fieldNumber).getDouble()</code>.
-     * Field numbers start at 1.
-     * @param fieldNumber The number of the field.
-     * @return The field's on disk value.
+     * Opens a stream which replaces the value of a memo field of the current
+     * record. The new value is written to new blocks at the end of the DBT
+     * as it arrives, and the field is pointed at it when the stream is
+     * closed. No other memo value may be written until then, so the stream
+     * must always be closed; one that is not blocks memo writes, and holds
+     * the lock on the DBT header if file locking is enabled, until the DBF
+     * is closed.
+     * @param fieldNumber The number of the memo field.
+     * @return A stream to write the new value to.
+     * @throws IllegalStateException If the field is not a memo field, or
+     * there is no current record.
+     * @throws IOException If an I/O error occurs.
      */
-    public double getDouble(int fieldNumber) {
-        return getValue(fieldNumber).getDouble();
+    public OutputStream openMemoOutputStream(int fieldNumber) throws IOException {
+        final DBFField field = requireFieldType(fieldNumber, "openMemoOutputStream()",
+                DBFField.FieldType.M, DBFField.FieldType.B, DBFField.FieldType.G);
+        if (bof()) {
+            throw new IllegalStateException("Cannot replace a value at beginning of file");
+        } else if (eof()) {
+            throw new IllegalStateException("Cannot replace a value at end of file");
+        }
+        final int targetRecord = recordNumber;
+        final MemoFile.MemoOutputStream memoOut = getMemoFile(true).openOutputStream();
+        return new FilterOutputStream(memoOut) {
+            private boolean closed;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                memoOut.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                memoOut.close();
+                storeMemoBlock(field, fieldNumber, targetRecord, memoOut.getBlockNumber());
+            }
+        };
     }
 
     /**
-     * A convenience method for getting a double value for the specified field.
-     * This is equivalent to calling <code>getValue(fieldName).getDouble()</code>.
-     * @param fieldName The name of the field.
-     * @return The field's on disk value.
+     * Opens a stream which replaces the value of a memo field of the current
+     * record.
+     * @param fieldName The name of the memo field.
+     * @return A stream to write the new value to.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a memo field, or
+     * there is no current record.
+     * @throws IOException If an I/O error occurs.
+     * @see #openMemoOutputStream(int)
      */
-    public double getDouble(String fieldName) {
-        return getValue(fieldName).getDouble();
+    public OutputStream openMemoOutputStream(String fieldName) throws IOException {
+        return openMemoOutputStream(requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Points a memo field at a value which has been streamed to the DBT.
+     * @param field The memo field.
+     * @param fieldNumber The number of the memo field.
+     * @param targetRecord The record the value belongs to.
+     * @param blockNumber The block number of the new value.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void storeMemoBlock(DBFField field, int fieldNumber, int targetRecord, int blockNumber)
+            throws IOException {
+        final boolean current = targetRecord == recordNumber;
+        Map<String, Object> oldKeys = current && !editing ? getIndexKeys() : null;
+        if (isThreadSafetyEnabled()) {
+            threadLock.lock();
+        }
+        try {
+            if (current) {
+                invalidateMemo((int) FieldDecoder.parseLong(recordData,
+                        structure.getFieldOffset(fieldNumber - 1), field.getFieldLength()));
+            }
+            invalidateMemo(blockNumber);
+            writeField(field, structure.getFieldOffset(fieldNumber - 1), targetRecord,
+                    String.format("%10d", blockNumber));
+            if (current) {
+                values[fieldNumber - 1] = new MemoValue(this, field, blockNumber);
+            }
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+
+        if (current && editing) {
+            return;
+        }
+
+        updateLastModifiedDate();
+
+        if (current) {
+            updateIndexes(oldKeys, null, null);
+        }
+        changeCompleted(false);
+    }
+
+    /**
+     * Gets the DBT file paired with this DBF, opening it the first time it
+     * is needed. It then stays open until the DBF is closed.
+     * @param create Whether to create the DBT file if it does not exist.
+     * @return The opened DBT file.
+     * @throws IOException If the DBT file does not exist and
+     * <tt>create</tt> is <code>false</code>, or an I/O error occurs.
+     */
+    MemoFile getMemoFile(boolean create) throws IOException {
+        if (isThreadSafetyEnabled()) {
+            threadLock.lock();
+        }
+        try {
+            // The thread lock is optional, so it cannot stop two threads from
+            // both opening the DBT.
+            synchronized (shared) {
+                if (closed || !randomAccessFile.getChannel().isOpen()) {
+                    throw new IOException("DBF is closed");
+                }
+                if (shared.memoFile == null) {
+                    File dbtFile = getDbtFile();
+                    if (!dbtFile.exists()) {
+                        if (!create) {
+                            throw new FileNotFoundException("DBT file not found: "
+                                    + dbtFile.getAbsolutePath());
+                        }
+                        createDbt();
+                    }
+                    shared.memoFile = MemoFile.open(dbtFile, threadLock);
+                    if (shared.journal != null) {
+                        shared.memoFile.setJournal(shared.journal, dbtFile);
+                    }
+                }
+                return shared.memoFile;
+            }
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Opens a forward-only cursor over every record of the table, in natural
+     * order. Records are read many at a time into a reusable buffer, which
+     * makes this the fastest way to visit a whole table. The cursor ignores
+     * the current order and the current record of this DBF, and includes
+     * deleted records, which can be recognized by
+     * {@link RecordView#isDeleted()}. Records appended after the cursor is
+     * opened are not visited.
+     * @return A cursor positioned before the first record.
+     * @throws IOException If an I/O error occurs while refreshing the header.
+     */
+    public RecordCursor scan() throws IOException {
+        refreshIfRequired();
+        return new RecordCursor(this, 1, structure.getNumberOfRecords(), null, null);
+    }
+
+    /**
+     * Opens a forward-only cursor over every record of the table, like
+     * {@link #scan()}, which reads only the given fields. Their offsets are
+     * worked out once, the other fields are never decoded, and reading one
+     * of them through the cursor's view is an error. If no fields are given,
+     * every field may be read.
+     * @param fieldNames The names of the fields to read.
+     * @return A cursor positioned before the first record.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IOException If an I/O error occurs while refreshing the header.
+     */
+    public RecordCursor scan(String... fieldNames) throws IOException {
+        return scan(null, fieldNames);
+    }
+
+    /**
+     * Opens a forward-only cursor over every record of the table, like
+     * {@link #scan()}, which reads only the given fields. Their offsets are
+     * worked out once, the other fields are never decoded, and reading one
+     * of them through the cursor's view is an error. If no fields are given,
+     * every field may be read. Field numbers start at 1.
+     * @param fieldNumbers The numbers of the fields to read.
+     * @return A cursor positioned before the first record.
+     * @throws IllegalArgumentException If a field number is out of range.
+     * @throws IOException If an I/O error occurs while refreshing the header.
+     */
+    public RecordCursor scan(int... fieldNumbers) throws IOException {
+        refreshIfRequired();
+        return new RecordCursor(this, 1, structure.getNumberOfRecords(),
+                project(fieldNumbers), null);
+    }
+
+    /**
+     * Opens a forward-only cursor over the records of the table which pass
+     * the given filter, optionally reading only the given fields. The filter
+     * is tested against the raw bytes of each record, so records which are
+     * skipped are never decoded.
+     * @param filter The filter records must pass, or <code>null</code> to
+     * visit every record.
+     * @param fieldNames The names of the fields to read, or none to read
+     * every field.
+     * @return A cursor positioned before the first matching record.
+     * @throws IllegalArgumentException If a bad field name is specified, or
+     * the filter does not fit the structure of the table.
+     * @throws IOException If an I/O error occurs while refreshing the header.
+     * @see RecordFilters
+     */
+    public RecordCursor scan(RecordFilter filter, String... fieldNames) throws IOException {
+        refreshIfRequired();
+        int[] fieldNumbers = new int[fieldNames.length];
+        for (int count = 0; count < fieldNames.length; count++) {
+            fieldNumbers[count] = requireFieldNumber(fieldNames[count]);
+        }
+        return new RecordCursor(this, 1, structure.getNumberOfRecords(),
+                project(fieldNumbers), filter != null ? filter.bind(structure) : null);
+    }
+
+    /**
+     * Creates the projection for a scan, or returns <code>null</code> if no
+     * fields are given, so that every field may be read.
+     */
+    private Projection project(int[] fieldNumbers) {
+        return fieldNumbers.length == 0 ? null : new Projection(structure, fieldNumbers);
+    }
+
+    /**
+     * Streams every record of the table, in natural order. Like
+     * {@link #scan()}, the stream ignores the current order and includes
+     * deleted records. For a parallel stream, the record range is split
+     * between threads, each of which reads its own records with positional
+     * reads. The {@link RecordView} handed to each stage is reused for the
+     * following records, so map it to values before collecting. An I/O error
+     * during the stream is thrown as an <code>UncheckedIOException</code>.
+     * @param parallel Whether the stream may be processed in parallel.
+     * @return A stream of record views.
+     * @throws IOException If an I/O error occurs while refreshing the header.
+     */
+    public Stream<RecordView> stream(boolean parallel) throws IOException {
+        refreshIfRequired();
+        return StreamSupport.stream(new RecordSpliterator(this, 1,
+                structure.getNumberOfRecords()), parallel);
+    }
+
+    /**
+     * Reads a run of consecutive records into the given array with a single
+     * positional read, which leaves the position of the channel alone. In
+     * memory mapped mode, the records are copied out of the mapping.
+     * @param firstRecord The number of the first record to read.
+     * @param destination The array to read the records into, starting at
+     * index 0.
+     * @param length The number of bytes to read, which should be a multiple
+     * of the record length.
+     * @throws IOException If an I/O error occurs.
+     */
+    void readRecords(int firstRecord, byte[] destination, int length) throws IOException {
+        final long position = (long) structure.getHeaderLength()
+                + (long) (firstRecord - 1) * structure.getRecordLength();
+        final FileChannel channel = randomAccessFile.getChannel();
+        // Positional reads are safe without the thread lock, but remapping
+        // the file and taking file locks are not.
+        final boolean lockThread = isThreadSafetyEnabled()
+                && (memoryMapped || isFileLockingEnabled());
+        if (lockThread) {
+            threadLock.lock();
+        }
+        try {
+            if (memoryMapped) {
+                ByteBuffer mapping = mapFile(position + length).duplicate();
+                mapping.position((int) position);
+                mapping.get(destination, 0, length);
+                return;
+            }
+
+            FileLock lock = null;
+            if (isFileLockingEnabled()) {
+                lock = channel.lock(position, length, true);
+            }
+            try {
+                ByteBuffer target = ByteBuffer.wrap(destination, 0, length);
+                while (target.hasRemaining()) {
+                    if (channel.read(target, position + target.position()) == -1) {
+                        throw new IOException("End of file encountered while reading records");
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.release();
+                }
+            }
+        } finally {
+            if (lockThread) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the memory mapping of the file, mapping or re-mapping it if the
+     * current mapping does not extend to <tt>requiredLength</tt>, which
+     * happens when the file grows.
+     * @param requiredLength The number of bytes from the start of the file
+     * which must be covered by the mapping.
+     * @return The mapping of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected MappedByteBuffer mapFile(long requiredLength) throws IOException {
+        MappedByteBuffer mapping = mappedBuffer;
+        if (isMappingUsable(mapping, requiredLength)) {
+            return mapping;
+        }
+        // Parallel streams read through the same cursor, and the thread lock
+        // is optional, so remapping is serialized here.
+        synchronized (shared) {
+            mapping = mappedBuffer;
+            if (!isMappingUsable(mapping, requiredLength)) {
+                final int generation = shared.generation;
+                FileChannel channel = randomAccessFile.getChannel();
+                // The DBF format is limited to 2GB, so one mapping always suffices.
+                long size = Math.min(channel.size(), Integer.MAX_VALUE);
+                if (size < requiredLength) {
+                    throw new IOException("End of file encountered while reading record");
+                }
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mappedGeneration = generation;
+                mappedBuffer = mapping;
+            }
+            return mapping;
+        }
+    }
+
+    /**
+     * Checks whether a mapping of the file can be used to read up to
+     * <tt>requiredLength</tt>.
+     * @param mapping The mapping, or <code>null</code> if not mapped yet.
+     * @param requiredLength The number of bytes from the start of the file
+     * which must be covered by the mapping.
+     * @return Whether the mapping can be used.
+     */
+    private boolean isMappingUsable(MappedByteBuffer mapping, long requiredLength) {
+        // A rollback may have truncated the file underneath the mapping.
+        return mapping != null && mapping.capacity() >= requiredLength
+                && mappedGeneration == shared.generation;
+    }
+
+    /**
+     * Gets whether records of this DBF are read through a memory mapping of
+     * the file.
+     * @return Whether the DBF is memory mapped.
+     * @see #use(File, boolean)
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Gets a file object pointing to the DBT file which would be paired with
+     * this DBF file.
+     * @return a <code>File</code> instance
+     */
+    protected File getDbtFile() {
+        return new File(dbfFile.getAbsolutePath().substring(0, dbfFile.getAbsolutePath().length() - 3) + "dbt");
+    }
+
+    /*
+     * Gets a file object pointing to the production MDX file which would be
+     * paired with this DBF file.
+     * @return a <code>File</code> instance
+     */
+    protected File getProductionMdxFile() {
+        return new File(dbfFile.getAbsolutePath().substring(0, dbfFile.getAbsolutePath().length() - 3) + "mdx");
+    }
+
+    /**
+     * Gets a file object pointing to the journal which holds the original
+     * contents of the pages changed by the transaction in progress.
+     * @return a <code>File</code> instance
+     */
+    protected File getJournalFile() {
+        return new File(dbfFile.getAbsolutePath().substring(0, dbfFile.getAbsolutePath().length() - 3) + "jnl");
+    }
+
+    /**
+     * Gets the field number by the field's name. If the field doesn't exist,
+     * 0 is returned.
+     * @param fieldName The name of the field.
+     * @return The field's number if it exists, or 0 if not.
+     */
+    public int getFieldNumberByName(String fieldName) {
+        return getStructure().getFieldIndex(fieldName) + 1;
+    }
+
+    /**
+     * A convenience method for getting a string value for the specified field.
+     * This is equivelant to calling <code>getValue(fieldNumber).getString()</code>.
+     * Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     */
+    public String getString(int fieldNumber) {
+        return getValue(fieldNumber).getString();
+    }
+
+    /**
+     * A convenience method for getting a string value for the specified field.
+     * This is equivalent to calling <code>getValue(fieldName).getString()</code>.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     */
+    public String getString(String fieldName) {
+        return getValue(fieldName).getString();
+    }
+
+    /**
+     * A convenience method for getting an int value for the specified field.
+     * This is equivalent to calling <code>getValue(fieldNumber).getInt()</code>.
+     * Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     */
+    public int getInt(int fieldNumber) {
+        return getValue(fieldNumber).getInt();
+    }
+
+    /**
+     * A convenience method for getting an int value for the specified field.
+     * This is equivalent to calling <code>getValue(fieldName).getInt()</code>.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     */
+    public int getInt(String fieldName) {
+        return getValue(fieldName).getInt();
+    }
+
+    /**
+     * Gets the integer portion of a numeric field, parsed straight from the
+     * record buffer without creating any objects. A blank value is returned
+     * as 0. Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The integer portion of the field's on disk value.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws NumberFormatException If the field does not hold a number.
+     * @throws ArithmeticException If the integer portion does not fit in an
+     * int.
+     */
+    public int getIntRaw(int fieldNumber) {
+        return Math.toIntExact(getLong(fieldNumber));
+    }
+
+    /**
+     * Gets the integer portion of a numeric field, parsed straight from the
+     * record buffer without creating any objects. A blank value is returned
+     * as 0.
+     * @param fieldName The name of the field.
+     * @return The integer portion of the field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws NumberFormatException If the field does not hold a number.
+     * @throws ArithmeticException If the integer portion does not fit in an
+     * int.
+     */
+    public int getIntRaw(String fieldName) {
+        return getIntRaw(requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the integer portion of a numeric field, parsed straight from the
+     * record buffer without creating any objects. A blank value is returned
+     * as 0. Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value, truncated to a long.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws NumberFormatException If the field does not hold a number.
+     * @throws ArithmeticException If the integer portion does not fit in a
+     * long.
+     */
+    public long getLong(int fieldNumber) {
+        checkGeneration();
+        DBFField field = requireFieldType(fieldNumber, "getLong()",
+                DBFField.FieldType.N, DBFField.FieldType.F);
+        return FieldDecoder.parseLong(recordData,
+                structure.getFieldOffset(fieldNumber - 1), field.getFieldLength());
+    }
+
+    /**
+     * Gets the integer portion of a numeric field, parsed straight from the
+     * record buffer without creating any objects. A blank value is returned
+     * as 0.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value, truncated to a long.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws NumberFormatException If the field does not hold a number.
+     * @throws ArithmeticException If the integer portion does not fit in a
+     * long.
+     */
+    public long getLong(String fieldName) {
+        return getLong(requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a numeric field as a double, parsed straight from
+     * the record buffer rather than through a <code>BigDecimal</code>. The
+     * result is the same as <code>getValue(fieldNumber).getDouble()</code>.
+     * Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws NumberFormatException If the field does not hold a number.
+     */
+    public double getDouble(int fieldNumber) {
+        checkGeneration();
+        DBFField field = requireFieldType(fieldNumber, "getDouble()",
+                DBFField.FieldType.N, DBFField.FieldType.F);
+        return FieldDecoder.parseDouble(recordData,
+                structure.getFieldOffset(fieldNumber - 1), field.getFieldLength());
+    }
+
+    /**
+     * Gets the value of a numeric field as a double, parsed straight from
+     * the record buffer rather than through a <code>BigDecimal</code>. The
+     * result is the same as <code>getValue(fieldName).getDouble()</code>.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws NumberFormatException If the field does not hold a number.
+     */
+    public double getDouble(String fieldName) {
+        return getDouble(requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a date field as the number of days since 1970-01-01,
+     * parsed straight from the record buffer without creating any objects.
+     * Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value as an epoch day, or
+     * {@link DBFDate#BLANK_EPOCH_DAY} if the date is blank.
+     * @throws IllegalStateException If the field is not a date field.
+     * @throws NumberFormatException If the field does not hold a date.
+     */
+    public int getEpochDay(int fieldNumber) {
+        checkGeneration();
+        requireFieldType(fieldNumber, "getEpochDay()", DBFField.FieldType.D);
+        return FieldDecoder.parseEpochDay(recordData, structure.getFieldOffset(fieldNumber - 1));
+    }
+
+    /**
+     * Gets the value of a date field as the number of days since 1970-01-01,
+     * parsed straight from the record buffer without creating any objects.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value as an epoch day, or
+     * {@link DBFDate#BLANK_EPOCH_DAY} if the date is blank.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a date field.
+     * @throws NumberFormatException If the field does not hold a date.
+     */
+    public int getEpochDay(String fieldName) {
+        return getEpochDay(requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a logical field straight from the record buffer,
+     * without creating any objects. Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return <code>true</code> if the field holds Y or T.
+     * @throws IllegalStateException If the field is not a logical field.
+     */
+    public boolean isTrue(int fieldNumber) {
+        checkGeneration();
+        requireFieldType(fieldNumber, "isTrue()", DBFField.FieldType.L);
+        return FieldDecoder.parseLogical(recordData[structure.getFieldOffset(fieldNumber - 1)]);
+    }
+
+    /**
+     * Gets the value of a logical field straight from the record buffer,
+     * without creating any objects.
+     * @param fieldName The name of the field.
+     * @return <code>true</code> if the field holds Y or T.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a logical field.
+     */
+    public boolean isTrue(String fieldName) {
+        return isTrue(requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Looks up a field number by name, failing if the field does not exist.
+     */
+    int requireFieldNumber(String fieldName) {
+        int fieldNumber = getFieldNumberByName(fieldName);
+        if (fieldNumber == 0) {
+            throw new IllegalArgumentException("Field " + fieldName + " does not exist");
+        }
+        return fieldNumber;
+    }
+
+    /**
+     * Gets a field by number, failing if it is not one of the given types.
+     */
+    DBFField requireFieldType(int fieldNumber, String method, DBFField.FieldType... types) {
+        DBFField field = structure.getFields().get(fieldNumber - 1);
+        for (DBFField.FieldType type : types) {
+            if (field.getFieldType() == type) {
+                return field;
+            }
+        }
+        throw new IllegalStateException(method + " called on a field of type "
+                + field.getFieldType());
     }
 
     /**
@@ -1186,6 +2202,34 @@ public class DBF {
         return getValue(fieldName).getDate();
     }
 
+    /**
+     * Gets the value of a date field as a <code>LocalDate</code>, parsed
+     * straight from the record buffer. Field numbers start at 1.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value, or <code>null</code> if the date
+     * is blank.
+     * @throws IllegalStateException If the field is not a date field.
+     * @throws NumberFormatException If the field does not hold a date.
+     */
+    public LocalDate getLocalDate(int fieldNumber) {
+        int epochDay = getEpochDay(fieldNumber);
+        return epochDay == DBFDate.BLANK_EPOCH_DAY ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Gets the value of a date field as a <code>LocalDate</code>, parsed
+     * straight from the record buffer.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value, or <code>null</code> if the date
+     * is blank.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a date field.
+     * @throws NumberFormatException If the field does not hold a date.
+     */
+    public LocalDate getLocalDate(String fieldName) {
+        return getLocalDate(requireFieldNumber(fieldName));
+    }
+
     /**
      * A convenience method for getting a boolean value for the specified field.
      * This is equivalent to calling <code>getValue(fieldNumber).getBoolean()</code>.
@@ -1214,7 +2258,19 @@ public class DBF {
      * @return The field's on disk value.
      */
     public DBFValue getValue(int fieldNumber) {
-        return values[fieldNumber - 1];
+        checkGeneration();
+        DBFValue value = values[fieldNumber - 1];
+        if (value == null) {
+            DBFField field = structure.getFields().get(fieldNumber - 1);
+            if (field.getFieldType().isMemoField()) {
+                value = memoValue(field, recordData, structure.getFieldOffset(fieldNumber - 1));
+            } else {
+                value = FieldDecoder.decode(field, recordData, structure.getFieldOffset(fieldNumber - 1),
+                        structure.getTextCodec());
+            }
+            values[fieldNumber - 1] = value;
+        }
+        return value;
     }
 
     /**
@@ -1301,6 +2357,7 @@ public class DBF {
      * @throws IOException if an I/O error occurs
      */
     public Object replace(int fieldNumber, Object value) throws IOException {
+        checkGeneration();
         if (fieldNumber <= 0) {
             throw new IllegalArgumentException("Field number must be greater than zero");
         } else if (fieldNumber > structure.getFields().size()) {
@@ -1316,270 +2373,526 @@ public class DBF {
             value = ((DBFValue) value).getValue();
         }
 
-        Object oldValue = values[fieldNumber - 1].getValue();
+        Object oldValue = getValue(fieldNumber).getValue();
 
-        // Evaluate index expressions BEFORE updating value
-        Map<String, Object> oldKeys = getIndexKeys();
+        // Evaluate index expressions BEFORE updating value. During an edit,
+        // they were evaluated when it began.
+        Map<String, Object> oldKeys = editing ? null : getIndexKeys();
 
-        values[fieldNumber - 1].setValue(value);
+        getValue(fieldNumber).setValue(value);
+        // Dates given as java.util.Date or LocalDate are converted on the way in.
+        value = getValue(fieldNumber).getValue();
         try {
             if (isThreadSafetyEnabled()) {
                 threadLock.lock();
             }
-            int fieldSkipLength = 1; // Skip over deleted flag
+            int fieldSkipLength = structure.getFieldOffset(fieldNumber - 1);
+            DBFField f = structure.getFields().get(fieldNumber - 1);
 
-            // Calculate size of preceding fields to skip over
-            Iterator<DBFField> i = structure.getFields().iterator();
-            for (int count = 0; count < (fieldNumber - 1); count++) {
-                DBFField f = i.next();
-                fieldSkipLength += f.getFieldLength();
+            Object storedValue = value;
+
+            // If this field is a DBT field, write the external data now.
+            if (f.getFieldType().isMemoField()) {
+                // Write the value to the DBT, reusing the old value's blocks
+                // if the new value fits.
+                byte[] memoBytes = f.getFieldType().equals(DBFField.FieldType.M)
+                        ? structure.getTextCodec().encode((String) value) : (byte[]) value;
+                int oldBlockNumber = (int) FieldDecoder.parseLong(recordData,
+                        fieldSkipLength, f.getFieldLength());
+                if (editing && oldBlockNumber == (int) FieldDecoder.parseLong(editOriginal,
+                        fieldSkipLength, f.getFieldLength())) {
+                    // Leave the original value alone, in case the edit is
+                    // cancelled.
+                    oldBlockNumber = 0;
+                }
+                int blockNumber = getMemoFile(true).write(oldBlockNumber, memoBytes);
+                invalidateMemo(oldBlockNumber);
+                invalidateMemo(blockNumber);
+
+                // The DBF column holds the block number of the value.
+                storedValue = String.format("%10d", blockNumber);
+            }
+            writeField(f, fieldSkipLength, recordNumber, storedValue);
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
             }
-            DBFField f = i.next();
+        }
 
-            FileChannel channel = randomAccessFile.getChannel();
+        if (!editing) {
+            updateLastModifiedDate();
 
-            // If this field is a DBT field, write the external data now.
-            switch (f.getFieldType()) {
-                case M:
-                case B:
-                case G:
-                    File dbtFile = getDbtFile();
+            updateIndexes(oldKeys, oldValue, value);
+            changeCompleted(false);
+        }
 
-                    // Create the DBT file if it is missing
-                    if (!dbtFile.exists()) {
-                        createDbt();
-                    }
+        return oldValue;
+    }
 
-                    // Open the DBT file
-                    RandomAccessFile dbtRandomAccessFile = new RandomAccessFile(
-                            dbtFile, "rw" + (synchronousWritesEnabled ? "s" : ""));
-                    try {
-                        FileChannel dbtChannel = dbtRandomAccessFile.getChannel();
-
-                        // Fetch the block size.
-                        dbtChannel.position(20);
-                        buf.position(0);
-                        buf.limit(2);
-                        while (buf.hasRemaining()) {
-                            if (dbtChannel.read(buf) == -1) {
-                                throw new IOException("End of file encountered while reading DBT structure");
-                            }
-                        }
-                        buf.position(0);
-                        int blockLength = buf.getShort() & 0xffff;
-                        if (blockLength < 64) {
-                            throw new IOException("DBT block length less than 64 bytes");
-                        }
+    /**
+     * Begins an edit of the current record. Until the edit is committed,
+     * {@link #replace(int, Object)}, {@link #delete} and {@link #undelete}
+     * only change the record in memory, and the whole record is then
+     * written with a single write, followed by a single update of the
+     * header and the active index. Memo values are still written to the
+     * DBT straight away, but the record only points to them once the edit
+     * is committed.
+     * <p>
+     * Moving the record pointer or closing the DBF commits the edit.
+     * </p>
+     * @throws IllegalStateException If an edit is already in progress, or
+     * there is no current record.
+     * @see #commit
+     * @see #cancelEdit
+     */
+    public void beginEdit() {
+        checkGeneration();
+        if (editing) {
+            throw new IllegalStateException("An edit is already in progress");
+        } else if (bof()) {
+            throw new IllegalStateException("Cannot edit a record at beginning of file");
+        } else if (eof()) {
+            throw new IllegalStateException("Cannot edit a record at end of file");
+        }
 
-                        // Calculate the length of both the old value and the new
-                        // value.
-                        int oldValueLength;
-                        int newValueLength;
-                        if (f.getFieldType().equals(DBFField.FieldType.M)) // String
-                        {
-                            oldValueLength = ((String) oldValue).length();
-                            newValueLength = ((String) value).length();
-                        } else // binary
-                        {
-                            oldValueLength = ((byte[]) oldValue).length;
-                            newValueLength = ((byte[]) value).length;
-                        }
+        editOldKeys = getIndexKeys();
+        editOriginal = recordData.clone();
+        editing = true;
+    }
 
-                        // Calculate the amount of DBT blocks required to fit the
-                        // old value and the new value.
-                        int oldValueBlocksRequired = (int) Math.ceil((oldValueLength + 8) / (double) blockLength);
-                        int newValueBlocksRequired = (int) Math.ceil((newValueLength + 8) / (double) blockLength);
-
-                        // If the new value requires more blocks than the old
-                        // value, we need to append the new value to the end of the
-                        // DBT. Otherwise, we can re-use the existing blocks.
-                        boolean appendNewRecord = true;
-                        if (newValueBlocksRequired <= oldValueBlocksRequired) {
-                            // Use the existing blocks; Find the block number.
-                            channel.position(structure.getHeaderLength() + fieldSkipLength
-                                    + (long) (recordNumber - 1) * structure.getRecordLength());
-                            buf.position(0);
-                            buf.limit(10);
-                            while (buf.hasRemaining()) {
-                                channel.read(buf);
-                            }
-                            buf.position(0);
-                            byte[] blockNumberBytes = new byte[10];
-                            buf.get(blockNumberBytes);
-                            String blockNumberString = new String(blockNumberBytes).trim();
-                            if (blockNumberString.length() > 0) {
-                                // There is a block number attached to this record.
-                                appendNewRecord = false;
-                                int blockNumber = Integer.parseInt(blockNumberString);
-
-                                // Seek to the existing block plus 4 bytes
-                                dbtChannel.position(blockLength * (long) blockNumber + 4);
-                            }
-                        }
-                        if (appendNewRecord) {
-                            // Exclusive lock the "next available block" field
-                            if (isFileLockingEnabled()) {
-                                dbtChannel.lock(0, 4, false);
-                            }
-
-                            // Read the next available block
-                            buf.position(0);
-                            buf.limit(4);
-                            dbtChannel.position(0);
-                            do {
-                                dbtChannel.read(buf);
-                            } while (buf.hasRemaining());
-                            buf.position(0);
-                            int nextAvailableBlock = buf.getInt();
-
-                            // Add the number of required blocks and write out
-                            // the next available block field
-                            buf.position(0);
-                            buf.putInt(nextAvailableBlock + newValueBlocksRequired);
-                            buf.position(0); // flip
-                            dbtChannel.position(0);
-                            do {
-                                dbtChannel.write(buf);
-                            } while (buf.hasRemaining());
-
-                            // Write the block number of the new value to the
-                            // column in the DBF file.
-                            channel.position(structure.getHeaderLength() + fieldSkipLength
-                                    + (long) (recordNumber - 1) * structure.getRecordLength());
-                            buf.position(0);
-                            buf.limit(10);
-                            buf.put(String.format("%10d", nextAvailableBlock).getBytes());
-                            buf.position(0); // flip
-                            do {
-                                channel.write(buf);
-                            } while (buf.hasRemaining());
-
-                            // Seek to the next available block
-                            dbtChannel.position((long) nextAvailableBlock * blockLength);
-
-                            // Write the 4 bytes that start a DBT block header
-                            buf.position(0);
-                            buf.limit(4);
-                            buf.put((byte) 0xff);
-                            buf.put((byte) 0xff);
-                            buf.put((byte) 0x08);
-                            buf.put((byte) 0x00);
-                            buf.position(0);
-                            do {
-                                dbtChannel.write(buf);
-                            } while (buf.hasRemaining());
-                        }
-                        // Store the start of the block so we can pad the
-                        // remainder with nulls after writing the value.
-                        long startOfBlock = dbtChannel.position() - 4;
-
-                        // Write the length of the new value, including the 8 header bytes
-                        buf.position(0);
-                        buf.limit(4);
-                        buf.putInt(newValueLength + 8);
-                        buf.position(0);
-                        do {
-                            dbtChannel.write(buf);
-                        } while (buf.hasRemaining());
-
-                        // Try to use the direct buffer if it is large enough.
-                        // Otherwise allocate another buffer large enough for the
-                        // new value.
-                        ByteBuffer fieldBuffer;
-                        if (buf.capacity() < newValueLength) {
-                            fieldBuffer = ByteBuffer.allocate(newValueLength);
-                        } else {
-                            fieldBuffer = buf;
-                            fieldBuffer.position(0);
-                            fieldBuffer.limit(newValueLength);
-                        }
+    /**
+     * Gets whether an edit of the current record is in progress.
+     * @return Whether an edit is in progress.
+     * @see #beginEdit
+     */
+    public boolean isEditing() {
+        return editing;
+    }
+
+    /**
+     * Writes the changes made to the current record since
+     * {@link #beginEdit} to the file, and ends the edit. Nothing is written
+     * if the record did not change.
+     * @throws IllegalStateException If no edit is in progress.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void commit() throws IOException {
+        if (!editing) {
+            throw new IllegalStateException("No edit is in progress");
+        }
+
+        final byte[] original = editOriginal;
+        final Map<String, Object> oldKeys = editOldKeys;
+        editing = false;
+        editOriginal = null;
+        editOldKeys = null;
+        if (Arrays.equals(original, recordData)) {
+            changeCompleted(true);
+            return;
+        }
+
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            final long position = structure.getHeaderLength()
+                    + (long) (recordNumber - 1) * structure.getRecordLength();
+            FileLock lock = null;
+            if (isFileLockingEnabled()) {
+                lock = randomAccessFile.getChannel().lock(position, recordData.length, false);
+            }
+            try {
+                writeFully(ByteBuffer.wrap(recordData), position);
+            } finally {
+                if (lock != null) {
+                    lock.release();
+                }
+            }
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+
+        updateLastModifiedDate();
+        flushHeader();
+
+        updateIndexes(oldKeys, null, null);
+        changeCompleted(true);
+    }
+
+    /**
+     * Discards the changes made to the current record since
+     * {@link #beginEdit}, and ends the edit.
+     * @throws IllegalStateException If no edit is in progress.
+     */
+    public void cancelEdit() {
+        if (!editing) {
+            throw new IllegalStateException("No edit is in progress");
+        }
+
+        System.arraycopy(editOriginal, 0, recordData, 0, recordData.length);
+        currentRecordDeleted = recordData[0] == '*';
+        Arrays.fill(values, null);
+        editing = false;
+        editOriginal = null;
+        editOldKeys = null;
+    }
+
+    /**
+     * Begins a transaction. Until it is committed with
+     * {@link #commitTransaction} or undone with {@link #rollback}, the
+     * original contents of every page of the DBF, the DBT and the active
+     * index which is changed are saved to a journal first, and the
+     * transaction flag is set in the header. If the process crashes during
+     * the transaction, the changes are rolled back the next time the table
+     * is opened.
+     * <p>
+     * The durability policy does not sync changes during a transaction.
+     * Instead, the journal is synced once for each page the first time the
+     * page is changed, which appended records do not need, and everything
+     * is synced once on commit. Only the index which is active on this DBF
+     * when the transaction begins takes part in it. The transaction is shared
+     * by every cursor over the file, and may be committed or rolled back
+     * through any of them. Closing the DBF which began the transaction, or
+     * the last cursor over the file, with the transaction in progress rolls
+     * it back, while closing other cursors leaves it in progress.
+     * </p>
+     * @throws IllegalStateException If a transaction is already in progress.
+     * @throws IOException If an I/O error occurs.
+     * @see #getJournalFile
+     */
+    public void beginTransaction() throws IOException {
+        if (editing) {
+            commit();
+        }
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            if (shared.journal != null) {
+                throw new IllegalStateException("A transaction is already in progress");
+            }
+            // Changes made before the transaction are kept by a rollback.
+            flushHeader();
+
+            final Journal journal = Journal.create(getJournalFile());
+            try {
+                shared.journalTarget = journal.register(dbfFile, randomAccessFile.getChannel());
+                shared.journal = journal;
+                if (shared.memoFile != null) {
+                    shared.memoFile.setJournal(journal, getDbtFile());
+                }
+                if (index != null) {
+                    index.setJournal(journal);
+                    shared.journalIndex = index;
+                }
+                shared.journalOwner = this;
+                writeTransactionFlag(true);
+                randomAccessFile.getChannel().force(false);
+            } catch (IOException | RuntimeException ex) {
+                endJournal();
+                journal.delete();
+                throw ex;
+            }
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets whether a transaction is in progress.
+     * @return Whether a transaction is in progress.
+     */
+    public boolean isTransactionActive() {
+        return shared.journal != null;
+    }
+
+    /**
+     * Commits the transaction in progress. Any pending edit is committed,
+     * every change is synced, the transaction flag in the header is cleared,
+     * and the journal is deleted.
+     * @throws IllegalStateException If no transaction is in progress.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void commitTransaction() throws IOException {
+        if (shared.journal == null) {
+            throw new IllegalStateException("No transaction is in progress");
+        }
+        if (editing) {
+            commit();
+        }
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            final Journal journal = shared.journal;
+            syncFiles();
+            endJournal();
+            writeTransactionFlag(false);
+            randomAccessFile.getChannel().force(false);
+            journal.delete();
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Rolls back the transaction in progress. Any pending edit is cancelled,
+     * and the DBF, the DBT and the index taking part in the transaction are
+     * restored to their contents when it began. The header is then re-read,
+     * and the current record is read again.
+     * @throws IllegalStateException If no transaction is in progress.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void rollback() throws IOException {
+        if (shared.journal == null) {
+            throw new IllegalStateException("No transaction is in progress");
+        }
+        if (editing) {
+            cancelEdit();
+        }
+        final DBFIndex journalIndex = shared.journalIndex;
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            final Journal journal = shared.journal;
+            endJournal();
+            shared.headerDirty = false;
+            shared.unsyncedChanges = 0;
+            journal.rollback();
+            journal.delete();
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+
+        readStructure();
+        final MemoCache cache = shared.memoCache;
+        if (cache != null) {
+            shared.memoCache = new MemoCache(cache.getMaximumBytes());
+        }
+        if (journalIndex != null) {
+            journalIndex.refresh();
+        }
+        synchronized (shared) {
+            // Tells the other cursors to read their current records again.
+            seenGeneration = ++shared.generation;
+        }
+        gotoRecord(eof() ? structure.getNumberOfRecords() + 1 : recordNumber);
+    }
+
+    /**
+     * Discards the pending edit and resets the active index if a transaction
+     * has been rolled back through another cursor since the current record
+     * was read.
+     * @return Whether a transaction has been rolled back.
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean rolledBackElsewhere() throws IOException {
+        final int generation = shared.generation;
+        if (seenGeneration == generation) {
+            return false;
+        }
+        seenGeneration = generation;
+        editing = false;
+        editOriginal = null;
+        editOldKeys = null;
+        if (index != null) {
+            index.refresh();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the current record again if a transaction has been rolled back
+     * through another cursor since it was read, as the rollback may have
+     * changed or removed it.
+     * @throws UncheckedIOException If an I/O error occurs.
+     */
+    private void checkGeneration() {
+        if (seenGeneration == shared.generation) {
+            return;
+        }
+        try {
+            rolledBackElsewhere();
+            gotoRecord(eof() ? structure.getNumberOfRecords() + 1 : recordNumber);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Stops the files of the transaction in progress from reporting their
+     * writes to its journal.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void endJournal() throws IOException {
+        shared.journal = null;
+        shared.journalTarget = null;
+        shared.journalOwner = null;
+        if (shared.memoFile != null) {
+            shared.memoFile.setJournal(null, null);
+        }
+        if (shared.journalIndex != null) {
+            shared.journalIndex.setJournal(null);
+            shared.journalIndex = null;
+        }
+    }
+
+    /**
+     * Writes the transaction flag of the header.
+     * @param active Whether a transaction is in progress.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeTransactionFlag(boolean active) throws IOException {
+        buf.clear();
+        buf.put((byte) (active ? 1 : 0));
+        buf.flip();
+        FileLock lock = null;
+        if (isFileLockingEnabled()) {
+            lock = randomAccessFile.getChannel().lock(14, 1, false);
+        }
+        try {
+            writeFully(buf, 14);
+        } finally {
+            if (lock != null) {
+                lock.release();
+            }
+        }
+        structure.setTransactionActive(active);
+    }
+
+    /**
+     * Rolls back a transaction left in progress by a crash, if the header
+     * has the transaction flag set, and deletes a journal left behind by a
+     * transaction which was committed. A transaction which is still in
+     * progress in another process is left alone.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void recoverTransaction() throws IOException {
+        final File journalFile = getJournalFile();
+        if (structure.isTransactionActive()) {
+            if (journalFile.exists()) {
+                if (!Journal.recover(journalFile)) {
+                    return;
+                }
+                log.log(Level.WARNING, String.format("Rolled back an incomplete transaction in DBF [%s]", dbfFile));
+                readStructure();
+            }
+            if (structure.isTransactionActive()) {
+                writeTransactionFlag(false);
+            }
+            randomAccessFile.getChannel().force(false);
+        }
+        if (journalFile.exists()) {
+            Journal.discard(journalFile);
+        }
+    }
 
-                        // Fill the buffer with the new value
-                        if (f.getFieldType().equals(DBFField.FieldType.M)) {
-                            fieldBuffer.put(((String) value).getBytes());
-                        } else {
-                            fieldBuffer.put((byte[]) value);
-                        }
+    /**
+     * Writes the stored form of a field's value to a record in the file, and
+     * to the raw record if it is the current record. During an edit, the
+     * current record is only written in memory. The thread lock must be held
+     * by the caller.
+     * @param f the field to write
+     * @param fieldOffset the offset of the field within a record
+     * @param recordNumber the number of the record to write to
+     * @param storedValue the value to write, which for memo fields is the
+     * block number
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeField(DBFField f, int fieldOffset, int recordNumber, Object storedValue)
+            throws IOException {
+        FileChannel channel = randomAccessFile.getChannel();
 
-                        // Write the value to the DBT file
-                        fieldBuffer.position(0);
-                        do {
-                            dbtChannel.write(fieldBuffer);
-                        } while (fieldBuffer.hasRemaining());
-
-                        // Pad the remainder of the block with nulls so that
-                        // the file size is divisible by the block size. This
-                        // is not strictly necessary.
-                        int remainderLength = (int) (newValueBlocksRequired * blockLength
-                                - (dbtChannel.position() - startOfBlock));
-                        long remainderPosition = dbtChannel.position() + remainderLength;
-                        buf.clear();
-                        buf.limit(Math.min(buf.capacity(), remainderLength));
-                        while (buf.hasRemaining()) {
-                            buf.put((byte) 0); // null
-                        }
-                        while (dbtChannel.position() < remainderPosition) {
-                            buf.position(0);
-                            buf.limit((int) Math.min(remainderPosition
-                                    - dbtChannel.position(), buf.capacity()));
-                            do {
-                                dbtChannel.write(buf);
-                            } while (buf.hasRemaining());
-                        }
-                    } finally {
-                        dbtRandomAccessFile.close();
-                    }
-                default:
-                    // Try to use the direct buffer if it is large enough. Otherwise
-                    // allocate another buffer large enough for the field.
-                    ByteBuffer fieldBuffer;
-                    if (buf.capacity() < f.getFieldLength()) {
-                        fieldBuffer = ByteBuffer.allocate(f.getFieldLength());
-                    } else {
-                        fieldBuffer = buf;
-                        fieldBuffer.position(0);
-                        fieldBuffer.limit(f.getFieldLength());
-                    }
+        // Try to use the direct buffer if it is large enough. Otherwise
+        // allocate another buffer large enough for the field.
+        ByteBuffer fieldBuffer;
+        if (buf.capacity() < f.getFieldLength()) {
+            fieldBuffer = ByteBuffer.allocate(f.getFieldLength());
+        } else {
+            fieldBuffer = buf;
+            fieldBuffer.position(0);
+            fieldBuffer.limit(f.getFieldLength());
+        }
 
-                    // Fill the buffer with spaces
-                    while (fieldBuffer.hasRemaining()) {
-                        fieldBuffer.put((byte) ' ');
-                    }
-                    fieldBuffer.position(0);
-
-                    // Write value, truncating it if necessary, so it doesn't overflow
-                    // the field.
-                    byte[] valueBytes = value.toString().getBytes();
-                    fieldBuffer.put(valueBytes, 0, Math.min(valueBytes.length, f.getFieldLength()));
-                    fieldBuffer.position(0);
-                    channel.position(structure.getHeaderLength() + fieldSkipLength
-                            + (long) (recordNumber - 1) * structure.getRecordLength());
-                    FileLock lock = null;
-                    if (isFileLockingEnabled()) {
-                        lock = channel.lock(structure.getHeaderLength() + fieldSkipLength
-                                + (long) (recordNumber - 1) * structure.getRecordLength(), (long) f.getFieldLength(), false);
-                    }
-                    try {
-                        while (fieldBuffer.hasRemaining()) {
-                            channel.write(fieldBuffer);
-                        }
-                    } finally {
-                        if (isFileLockingEnabled()) {
-                            lock.release();
-                        }
-                    }
+        // Fill the buffer with spaces
+        while (fieldBuffer.hasRemaining()) {
+            fieldBuffer.put((byte) ' ');
+        }
+        fieldBuffer.position(0);
+
+        // Write value, truncating it if necessary, so it doesn't overflow
+        // the field.
+        byte[] valueBytes = encodeValue(storedValue);
+        fieldBuffer.put(valueBytes, 0, Math.min(valueBytes.length, f.getFieldLength()));
+        fieldBuffer.position(0);
+
+        // Keep the raw record in step with the file, so the raw
+        // getters see the new value.
+        if (recordNumber == this.recordNumber) {
+            fieldBuffer.get(recordData, fieldOffset, f.getFieldLength());
+            fieldBuffer.position(0);
+            if (editing) {
+                // Written by commit()
+                return;
             }
+        }
+        final long position = structure.getHeaderLength() + fieldOffset
+                + (long) (recordNumber - 1) * structure.getRecordLength();
+        FileLock lock = null;
+        if (isFileLockingEnabled()) {
+            lock = channel.lock(position, (long) f.getFieldLength(), false);
+        }
+        try {
+            writeFully(fieldBuffer, position);
         } finally {
-            if (isThreadSafetyEnabled()) {
-                threadLock.unlock();
+            if (isFileLockingEnabled()) {
+                lock.release();
             }
         }
+    }
 
-        updateLastModifiedDate();
-
-        updateIndexes(oldKeys, oldValue, value);
+    /**
+     * Writes the remaining bytes of the given buffer at the given position
+     * in the DBF, leaving the position of the channel alone.
+     * @param source the bytes to write
+     * @param position the position in the file to write them to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        final Journal.Target journalTarget = shared.journalTarget;
+        if (journalTarget != null) {
+            journalTarget.beforeWrite(position, source.remaining());
+        }
+        final FileChannel channel = randomAccessFile.getChannel();
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
 
-        return oldValue;
+    /**
+     * Encodes a value as it is stored in a character, numeric, date or
+     * logical field, using the character set of the table. Dates are stored
+     * as <em>YYYYMMDD</em>, or left blank, and bytes are stored as they are.
+     * @param value the value to encode
+     * @return the bytes to write, before padding
+     */
+    private byte[] encodeValue(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        } else if (value instanceof DBFDate) {
+            DBFDate date = (DBFDate) value;
+            return date.isBlank() ? new byte[0] : date.dtos().getBytes(StandardCharsets.US_ASCII);
+        }
+        return structure.getTextCodec().encode(value.toString());
     }
 
     /**
@@ -1793,36 +3106,41 @@ public class DBF {
      * @throws IOException If an I/O error occurs.
      */
     protected void setDeleted(boolean delete) throws IOException {
+        checkGeneration();
         if (bof()) {
             throw new IllegalStateException("Cannot delete or undelete at beginning of file");
         } else if (eof()) {
             throw new IllegalStateException("Cannot delete or undelete at end of file");
         }
 
-        if (currentRecordDeleted != delete) {
+        if (currentRecordDeleted != delete && editing) {
+            // Written by commit()
+            recordData[0] = (byte) (delete ? '*' : ' ');
+            currentRecordDeleted = delete;
+        } else if (currentRecordDeleted != delete) {
             Map<String, Object> oldKeys = getIndexKeys();
             FileLock lock = null;
             try {
                 if (isThreadSafetyEnabled()) {
                     threadLock.lock();
                 }
-                buf.position(0);
-                buf.limit(1);
-                buf.put((byte) (delete ? '*' : ' '));
-                buf.position(0);
                 FileChannel channel = randomAccessFile.getChannel();
                 if (isFileLockingEnabled()) {
                     lock = channel.lock();
                 }
                 // Re-read the header if thread safety or file locking are
-                // enabled, in case it was updated externally.
-                if (isThreadSafetyEnabled() || isFileLockingEnabled()) {
+                // enabled, in case it was updated externally. With header
+                // write-behind, the header in memory is the newer one.
+                if ((isThreadSafetyEnabled() || isFileLockingEnabled())
+                        && !shared.headerWriteBehind) {
                     readStructure();
                 }
-                channel.position(structure.getHeaderLength() + (long) (recordNumber - 1) * structure.getRecordLength());
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
+                // Fill the buffer after re-reading the header, which uses it.
+                buf.position(0);
+                buf.limit(1);
+                buf.put((byte) (delete ? '*' : ' '));
+                buf.position(0);
+                writeFully(buf, structure.getHeaderLength() + (long) (recordNumber - 1) * structure.getRecordLength());
             } finally {
                 if (lock != null) {
                     lock.release();
@@ -1832,10 +3150,12 @@ public class DBF {
                 }
             }
             currentRecordDeleted = delete;
+            recordData[0] = (byte) (delete ? '*' : ' ');
 
             updateLastModifiedDate();
 
             updateIndexes(oldKeys, null, null);
+            changeCompleted(false);
         }
     }
 
@@ -1844,6 +3164,12 @@ public class DBF {
      * @throws IOException If an I/O error occurs.
      */
     protected void updateLastModifiedDate() throws IOException {
+        if (shared.headerWriteBehind) {
+            // The date is taken when the header is flushed.
+            markHeaderDirty();
+            return;
+        }
+
         // Get the current day, month, year.
         GregorianCalendar cal = new GregorianCalendar();
         int year = cal.get(Calendar.YEAR);
@@ -1873,15 +3199,12 @@ public class DBF {
             buf.flip();
             buf.limit(3);
             FileChannel channel = randomAccessFile.getChannel();
-            channel.position(1);
             FileLock lock = null;
             if (isFileLockingEnabled()) {
                 lock = channel.lock(1, 3, false);
             }
             try {
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
+                writeFully(buf, 1);
             } finally {
                 if (isFileLockingEnabled()) {
                     lock.release();
@@ -1894,18 +3217,189 @@ public class DBF {
         }
     }
 
+    /**
+     * Records that the header in memory has changed, and flushes it if the
+     * header flush interval has elapsed since it was last flushed.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void markHeaderDirty() throws IOException {
+        final long interval = shared.headerFlushInterval;
+        shared.headerDirty = true;
+        if (interval > 0 && System.nanoTime() - shared.headerFlushTime >= interval * 1_000_000L) {
+            flushHeader();
+        }
+    }
+
+    /**
+     * Writes the header changes held back by write-behind, setting the last
+     * update date to the current date. The date and the number of records
+     * are written together. This does nothing if the header has not changed
+     * since it was last flushed.
+     * @throws IOException If an I/O error occurs.
+     * @see #setHeaderWriteBehindEnabled
+     */
+    public void flushHeader() throws IOException {
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            if (!shared.headerDirty) {
+                return;
+            }
+
+            GregorianCalendar cal = new GregorianCalendar();
+            DBFDate today = new DBFDate(cal.get(Calendar.MONTH) + 1,
+                    cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.YEAR));
+
+            buf.clear();
+            buf.put((byte) (today.getYear() - 1900));
+            buf.put(today.getMonth());
+            buf.put(today.getDay());
+            buf.putInt(structure.getNumberOfRecords());
+            buf.flip();
+            FileLock lock = null;
+            if (isFileLockingEnabled()) {
+                lock = randomAccessFile.getChannel().lock(1, 7, false);
+            }
+            try {
+                writeFully(buf, 1);
+            } finally {
+                if (lock != null) {
+                    lock.release();
+                }
+            }
+            structure.setLastUpdated(today);
+            shared.headerDirty = false;
+            shared.headerFlushTime = System.nanoTime();
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
     /**
      * Appends a blank record to the end of the current DBF.
      * @throws IOException If an I/O error occurs.
      */
     public void appendBlank() throws IOException {
+        appendRecords(Collections.singletonList((Object[]) null), 1);
+        changeCompleted(false);
+    }
+
+    /**
+     * Appends a record to the end of the table for each of the given rows.
+     * Each row holds the values of the fields in order, as they would be
+     * given to {@link #replace(int, Object)}. Fields beyond the end of a
+     * row, and <code>null</code> values, are left blank, and a
+     * <code>null</code> row appends a blank record.
+     * <p>
+     * The records are encoded into a large buffer and written many at a
+     * time, and the end of file mark, the number of records and the last
+     * modified date are each written once, which is much faster than
+     * calling {@link #appendBlank} and {@link #replace(int, Object)} for
+     * each record. Memo values are written to the DBT as the records are
+     * encoded. If there is an active index, each new record is added to it,
+     * with its keys evaluated from the encoded record rather than by moving
+     * to it and reading it back. Afterwards, the last record appended is the
+     * current record.
+     * </p>
+     * <p>
+     * If a row cannot be encoded, or the rows cannot be iterated, the
+     * records written before the batch of that row stay appended, counted
+     * and indexed, and none of its batch is written.
+     * </p>
+     * @param rows The values of the records to append.
+     * @return The number of records appended.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int appendAll(Iterable<Object[]> rows) throws IOException {
+        final int firstRecord = appendRows(rows);
+        return firstRecord == 0 ? 0 : recno() - firstRecord + 1;
+    }
+
+    /**
+     * Appends a record for each of the given rows, as {@link #appendAll}
+     * does.
+     * @param rows The values of the records to append.
+     * @return The number of the first record appended, or 0 if there were
+     * no rows.
+     * @throws IOException If an I/O error occurs.
+     */
+    int appendRows(Iterable<Object[]> rows) throws IOException {
+        // Write as many records at a time as fit in about 64KB.
+        final int recordsPerWrite = Math.max(1, 65536 / structure.getRecordLength());
+        final int firstRecord = appendRecords(rows, recordsPerWrite);
+        if (firstRecord > 0) {
+            changeCompleted(false);
+        }
+        return firstRecord;
+    }
+
+    /**
+     * Begins a bulk load. Until {@link #endBulkLoad} is called, records which
+     * are appended or replaced are not added to the active index one at a
+     * time. Instead, their keys are collected, and the index is built from
+     * them when the load ends, which is much faster for large imports. The
+     * index must not be used to move the record pointer during the load.
+     * <pre>
+     * dbf.beginBulkLoad();
+     * try {
+     *     dbf.appendAll(rows);
+     * } finally {
+     *     dbf.endBulkLoad();
+     * }
+     * </pre>
+     * @throws IOException If an I/O error occurs.
+     * @see DBFIndex#beginBulkLoad
+     */
+    public void beginBulkLoad() throws IOException {
+        if (index != null) {
+            index.beginBulkLoad();
+        }
+    }
+
+    /**
+     * Ends a bulk load, adding the keys collected since
+     * {@link #beginBulkLoad} to the active index. If this fails, the keys
+     * which were not added are kept, and it may be called again.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void endBulkLoad() throws IOException {
+        if (index != null) {
+            index.endBulkLoad();
+        }
+    }
+
+    /**
+     * Appends the given rows to the end of the file, writing up to
+     * <tt>recordsPerWrite</tt> records at a time, followed by the end of file
+     * mark. The number of records in the header and the last modified date
+     * are updated once, and the record pointer is left on the last record
+     * appended. Each batch of records is added to the active index once it
+     * is written and counted in the header.
+     * @param rows The values of the records to append.
+     * @param recordsPerWrite The number of records to write at a time.
+     * @return The number of the first record appended, or 0 if there were
+     * no rows. It is taken while the file is locked, so appends through
+     * other cursors do not shift it.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int appendRecords(Iterable<Object[]> rows, int recordsPerWrite) throws IOException {
+        if (editing) {
+            commit();
+        }
+
+        final int recordLength = structure.getRecordLength();
+        int appended = 0;
+        int existingRecords = 0;
         try {
             if (isThreadSafetyEnabled()) {
                 threadLock.lock();
             }
             FileChannel channel = randomAccessFile.getChannel();
             // Lock "number of records" field in header and then the range of
-            // the new record
+            // the new records
             FileLock lock1 = null;
             FileLock lock2 = null;
             try {
@@ -1913,89 +3407,72 @@ public class DBF {
                     lock1 = channel.lock(4, 4, false);
                 }
 
-                // Check if increasing the size of the file will put it over
-                // the 2GB limit. We check the logical size instead of the
-                // actual size, since there will be an EOF mark and possibly
-                // even garbage after it.
-                if (structure.getHeaderLength() +
-                        (1 + structure.getRecordLength() * (structure.getNumberOfRecords() + 1))
-                        > 2147483648L) {
-                    throw new IOException("File too large to append.");
+                // Append after the records in the file, which another
+                // process may have added to, unless the header in memory
+                // is newer than the one on disk.
+                if (shared.headerWriteBehind) {
+                    existingRecords = structure.getNumberOfRecords();
+                } else {
+                    buf.clear();
+                    buf.limit(4);
+                    while (buf.hasRemaining()) {
+                        if (channel.read(buf, 4 + buf.position()) == -1) {
+                            throw new IOException("End of file encountered while reading header");
+                        }
+                    }
+                    buf.flip();
+                    existingRecords = buf.getInt();
                 }
-
-                // Lock and write the new record
-                channel.position(structure.getHeaderLength()
-                        + structure.getRecordLength() * (long) structure.getNumberOfRecords());
+                final long firstOffset = structure.getHeaderLength()
+                        + recordLength * (long) existingRecords;
                 if (isFileLockingEnabled()) {
-                    lock2 = channel.lock(structure.getHeaderLength()
-                            + structure.getRecordLength() * (long) structure.getNumberOfRecords(),
-                            (long) structure.getRecordLength() + 1, false); // New record plus EOF mark
+                    lock2 = channel.lock(firstOffset, Long.MAX_VALUE - firstOffset, false);
                 }
-                buf.position(0);
-                buf.limit(1);
-                buf.put((byte) ' '); // Not deleted
-                buf.position(0);
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
-                Iterator<DBFField> i = structure.getFields().iterator();
-                while (i.hasNext()) {
-                    DBFField f = i.next();
-
-                    // Try to use the direct buffer if it is large enough. Otherwise
-                    // allocate another buffer large enough for the field.
-                    ByteBuffer fieldBuffer;
-                    if (buf.capacity() < f.getFieldLength()) {
-                        fieldBuffer = ByteBuffer.allocate(f.getFieldLength());
-                    } else {
-                        fieldBuffer = buf;
-                        fieldBuffer.clear();
-                        fieldBuffer.limit(f.getFieldLength());
-                    }
 
-                    // Fill the buffer with spaces
-                    while (fieldBuffer.hasRemaining()) {
-                        fieldBuffer.put((byte) ' ');
+                // Each batch is fully encoded before any of it is written, and
+                // is counted in the header before it is added to the index, so
+                // a row which fails leaves the earlier batches appended and
+                // indexed, and nothing of its own batch.
+                final byte[][] defaults = encodeDefaults();
+                final byte[] records = new byte[recordLength * recordsPerWrite + 1];
+                boolean terminated = false;
+                try {
+                    int pending = 0;
+                    Iterator<Object[]> i = rows.iterator();
+                    while (i.hasNext()) {
+                        Object[] row = i.next();
+                        // Check if increasing the size of the file will put it over
+                        // the 2GB limit. We check the logical size instead of the
+                        // actual size, since there will be an EOF mark and possibly
+                        // even garbage after it.
+                        if (firstOffset + 1 + recordLength * (long) (appended + pending + 1) > 2147483648L) {
+                            throw new IOException("File too large to append.");
+                        }
+                        encodeRecord(row, defaults, records, pending * recordLength);
+                        pending++;
+                        if (pending == recordsPerWrite || !i.hasNext()) {
+                            // The last batch is followed by the EOF mark
+                            terminated = !i.hasNext();
+                            records[pending * recordLength] = 0x1a;
+                            writeFully(ByteBuffer.wrap(records, 0,
+                                    pending * recordLength + (terminated ? 1 : 0)),
+                                    firstOffset + recordLength * (long) appended);
+                            appended += pending;
+                            setAppendedRecordCount(existingRecords + appended);
+                            indexRecords(records, pending, existingRecords + appended - pending + 1);
+                            pending = 0;
+                        }
                     }
-                    fieldBuffer.position(0);
-
-                    // Write value, truncating it if necessary, so it doesn't overflow
-                    // the field.
-                    byte[] valueBytes = f.getDefaultValue().getValue().toString().getBytes(); // TODO i18n
-                    fieldBuffer.put(valueBytes, 0, Math.min(valueBytes.length, f.getFieldLength()));
-                    fieldBuffer.position(0);
-                    while (fieldBuffer.hasRemaining()) {
-                        channel.write(fieldBuffer);
+                } finally {
+                    if (appended > 0 && !terminated) {
+                        // A later row failed after earlier batches were written
+                        // over the EOF mark.
+                        buf.clear();
+                        buf.put((byte) 0x1a);
+                        buf.flip();
+                        writeFully(buf, firstOffset + recordLength * (long) appended);
                     }
                 }
-
-                // Write the EOF mark
-                buf.position(0);
-                buf.limit(1);
-                buf.put((byte) 0x1a);
-                buf.position(0);
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
-
-                // Go back and bump the number of records in the table
-                channel.position(4);
-                buf.clear();
-                while (buf.position() < 4) {
-                    channel.read(buf);
-                }
-                buf.flip();
-                int numberOfRecords = buf.getInt() + 1;
-                buf.clear();
-                buf.putInt(numberOfRecords);
-                buf.flip();
-                channel.position(4);
-                while (buf.hasRemaining()) {
-                    channel.write(buf);
-                }
-
-                // Update the number of records in the in-memory structure
-                structure.setNumberOfRecords(numberOfRecords);
             } finally {
                 if (lock1 != null) {
                     try {
@@ -2014,13 +3491,224 @@ public class DBF {
             if (isThreadSafetyEnabled()) {
                 threadLock.unlock();
             }
+            if (appended > 0) {
+                // Also when a row failed, as earlier batches were appended.
+                updateLastModifiedDate();
+            }
         }
 
-        updateLastModifiedDate();
-        gotoRecord(structure.getNumberOfRecords());
+        if (appended == 0) {
+            return 0;
+        }
+        gotoRecord(existingRecords + appended);
+        return existingRecords + 1;
+    }
+
+    /**
+     * Sets the number of records in the header, unless it is written behind,
+     * and in the structure, after records are appended.
+     * @param numberOfRecords The number of records.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void setAppendedRecordCount(int numberOfRecords) throws IOException {
+        if (!shared.headerWriteBehind) {
+            buf.clear();
+            buf.putInt(numberOfRecords);
+            buf.flip();
+            writeFully(buf, 4);
+        }
+        structure.setNumberOfRecords(numberOfRecords);
+    }
+
+    /**
+     * Adds encoded records to the active index. The record buffer of this
+     * DBF is pointed at each record in turn while its keys are evaluated,
+     * so neither the header nor the records are read, and the record
+     * pointer is restored afterwards.
+     * @param records The encoded records.
+     * @param count The number of records to add.
+     * @param firstRecord The record number of the first record.
+     */
+    private void indexRecords(byte[] records, int count, int firstRecord) {
+        if (index == null || count == 0) {
+            return;
+        }
+        final int recordLength = structure.getRecordLength();
+        final byte[] savedData = recordData;
+        final int savedRecordNumber = recordNumber;
+        final boolean savedDeleted = currentRecordDeleted;
+        if (values == null || values.length != structure.getFields().size()) {
+            values = new DBFValue[structure.getFields().size()];
+        }
+        try {
+            recordData = new byte[recordLength];
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(records, i * recordLength, recordData, 0, recordLength);
+                currentRecordDeleted = recordData[0] == '*';
+                Arrays.fill(values, null);
+                recordNumber = firstRecord + i;
+                updateIndexes(new HashMap<String, Object>(), null, null);
+            }
+        } finally {
+            recordData = savedData;
+            recordNumber = savedRecordNumber;
+            currentRecordDeleted = savedDeleted;
+            Arrays.fill(values, null);
+        }
+    }
+
+    /**
+     * Queues the append of a record, to be written by the writer thread of
+     * the table. Appends which are queued together are written together, as
+     * by {@link #appendAll}.
+     * <p>
+     * Asynchronous writes are made by a single thread per table, through a
+     * cursor of its own, in the order they are queued. The thread is
+     * started by the first asynchronous write, and maintains the index which
+     * is active on this DBF at that time. That index must not be used on
+     * other threads while writes are pending, and thread safety should be
+     * enabled if the table is read or written on other threads meanwhile.
+     * Closing the DBF whose index the thread maintains applies the writes
+     * queued and stops the thread, and the next asynchronous write starts it
+     * again.
+     * The future of a write is completed once the batch it was written in
+     * has been written and, if the table has a durability policy other than
+     * {@link DurabilityPolicy#NONE}, synced. Writes still queued are made
+     * before the table is closed.
+     * </p>
+     * @param row The values of the record, by field index, which may be
+     * shorter than the number of fields, or <code>null</code> for a blank
+     * record.
+     * @return A future completed with the number of the new record.
+     * @throws IOException If this DBF is closed.
+     * @see #setDurabilityPolicy
+     * @see #setThreadSafetyEnabled
+     */
+    public CompletableFuture<Integer> appendAsync(Object[] row) throws IOException {
+        return asyncWriter().append(row).thenApply(Integer.class::cast);
+    }
+
+    /**
+     * Queues the replacement of a field value in the given record, to be
+     * written by the writer thread of the table. Changes to the same record
+     * which are queued together are made as a single edit.
+     * @param recordNumber The number of the record to change.
+     * @param fieldName The name of the field to change.
+     * @param value The new value.
+     * @return A future completed with the previous value of the field.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IOException If this DBF is closed.
+     * @see #appendAsync
+     */
+    public CompletableFuture<Object> replaceAsync(int recordNumber, String fieldName, Object value)
+            throws IOException {
+        return asyncWriter().replace(recordNumber, requireFieldNumber(fieldName), value);
+    }
+
+    /**
+     * Queues the deletion of the given record, to be written by the writer
+     * thread of the table.
+     * @param recordNumber The number of the record to delete.
+     * @return A future completed once the record is deleted.
+     * @throws IOException If this DBF is closed.
+     * @see #appendAsync
+     */
+    public CompletableFuture<Void> deleteAsync(int recordNumber) throws IOException {
+        return asyncWriter().delete(recordNumber).thenApply(result -> null);
+    }
+
+    /**
+     * Gets the writer of asynchronous writes for the table, starting it the
+     * first time it is needed.
+     * @return The writer.
+     * @throws IOException If this DBF is closed.
+     */
+    private AsyncWriter asyncWriter() throws IOException {
+        synchronized (shared) {
+            if (closed) {
+                throw new IOException("DBF is closed");
+            }
+            if (shared.asyncWriter != null) {
+                return shared.asyncWriter;
+            }
+        }
+        // Opening a cursor takes the thread lock, which must not be taken
+        // while holding the shared monitor.
+        DBF cursor = newCursor();
+        cursor.setIndex(index);
+        final AsyncWriter writer;
+        synchronized (shared) {
+            if (!closed && shared.asyncWriter == null) {
+                shared.asyncWriter = new AsyncWriter(cursor);
+                return shared.asyncWriter;
+            }
+            writer = closed ? null : shared.asyncWriter;
+        }
+        // Another thread started the writer first, or this DBF was closed.
+        cursor.close();
+        if (writer == null) {
+            throw new IOException("DBF is closed");
+        }
+        return writer;
+    }
+
+    /**
+     * Encodes the default value of each field, as stored in a blank record.
+     * @return The encoded values, by field index.
+     */
+    private byte[][] encodeDefaults() {
+        List<DBFField> fields = structure.getFields();
+        byte[][] defaults = new byte[fields.size()][];
+        for (int fieldIndex = 0; fieldIndex < defaults.length; fieldIndex++) {
+            defaults[fieldIndex] = encodeValue(fields.get(fieldIndex).getDefaultValue().getValue());
+        }
+        return defaults;
+    }
+
+    /**
+     * Encodes a new record into the given array. Memo values are written to
+     * the DBT straight away, and the record points to them.
+     * @param row The values of the fields, or <code>null</code> for a blank
+     * record.
+     * @param defaults The encoded default values, from {@link #encodeDefaults}.
+     * @param destination The array to encode the record into.
+     * @param offset The offset in <code>destination</code> of the record.
+     * @throws IOException If a memo value cannot be written.
+     */
+    private void encodeRecord(Object[] row, byte[][] defaults, byte[] destination, int offset)
+            throws IOException {
+        Arrays.fill(destination, offset, offset + structure.getRecordLength(),
+                (byte) ' '); // Not deleted, and blank fields
+        List<DBFField> fields = structure.getFields();
+        for (int fieldIndex = 0; fieldIndex < defaults.length; fieldIndex++) {
+            DBFField f = fields.get(fieldIndex);
+            Object value = row != null && fieldIndex < row.length ? row[fieldIndex] : null;
+            if (value instanceof DBFValue) {
+                value = ((DBFValue) value).getValue();
+            }
+
+            byte[] valueBytes;
+            if (value == null) {
+                valueBytes = defaults[fieldIndex];
+            } else if (f.getFieldType().isMemoField()) {
+                byte[] memoBytes = f.getFieldType().equals(DBFField.FieldType.M)
+                        ? structure.getTextCodec().encode((String) value) : (byte[]) value;
+                if (memoBytes.length == 0) {
+                    valueBytes = defaults[fieldIndex];
+                } else {
+                    int blockNumber = getMemoFile(true).write(0, memoBytes);
+                    invalidateMemo(blockNumber);
+                    valueBytes = encodeValue(String.format("%10d", blockNumber));
+                }
+            } else {
+                valueBytes = encodeValue(DBFValue.convert(value));
+            }
 
-        // Update indexes for the new record
-        updateIndexes(new HashMap<String, Object>(), null, null);
+            // Write value, truncating it if necessary, so it doesn't overflow
+            // the field.
+            System.arraycopy(valueBytes, 0, destination, offset + structure.getFieldOffset(fieldIndex),
+                    Math.min(valueBytes.length, f.getFieldLength()));
+        }
     }
 
     /**
@@ -2051,14 +3739,113 @@ public class DBF {
     /**
      * Instructs the operating system to commit any remaining I/O operations
      * to disk. This is useful when synchronous writes are disabled, and the
-     * API user would like to manually perform a sync.
+     * API user would like to manually perform a sync. Any header changes held
+     * back by write-behind are flushed first, and the DBT and the active index
+     * are synced along with the DBF.
+     * @see #setDurabilityPolicy
      */
     public void sync() {
         try {
-            randomAccessFile.getChannel().force(false);
+            syncFiles();
         } catch (IOException ex) {}
     }
 
+    /**
+     * Records that a change has been made, and syncs the files if the
+     * durability policy requires it at this time.
+     * @param commit Whether the change is the commit of an edit.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void changeCompleted(boolean commit) throws IOException {
+        if (shared.durabilityPolicy == DurabilityPolicy.NONE || shared.journal != null) {
+            // A transaction is synced when it is committed.
+            return;
+        }
+        final boolean sync;
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            final int changes = ++shared.unsyncedChanges;
+            switch (shared.durabilityPolicy) {
+                case EVERY_CHANGE:
+                    sync = true;
+                    break;
+                case CHANGES:
+                    sync = changes >= shared.durabilityChanges;
+                    break;
+                case INTERVAL:
+                    sync = System.nanoTime() - shared.syncTime
+                            >= shared.durabilityInterval * 1_000_000L;
+                    break;
+                case COMMIT:
+                    sync = commit;
+                    break;
+                case NONE:
+                default:
+                    sync = false;
+                    break;
+            }
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+        if (sync && !syncDeferred) {
+            syncFiles();
+        }
+    }
+
+    /**
+     * Sets whether syncs required by the durability policy are left to the
+     * caller, which then calls {@link #syncPending} itself.
+     * @param syncDeferred Whether to defer syncs.
+     */
+    void setSyncDeferred(boolean syncDeferred) {
+        this.syncDeferred = syncDeferred;
+    }
+
+    /**
+     * Syncs the files if there is a durability policy and changes have been
+     * made since the last sync.
+     * @throws IOException If an I/O error occurs.
+     */
+    void syncPending() throws IOException {
+        if (shared.durabilityPolicy != DurabilityPolicy.NONE && shared.unsyncedChanges > 0) {
+            syncFiles();
+        }
+    }
+
+    /**
+     * Flushes the header and forces the DBF, the DBT and the active index
+     * to disk.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void syncFiles() throws IOException {
+        try {
+            if (isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            flushHeader();
+            randomAccessFile.getChannel().force(false);
+            if (shared.memoFile != null) {
+                shared.memoFile.sync();
+            }
+            if (index != null) {
+                index.sync();
+            }
+            if (shared.journalIndex != null && shared.journalIndex != index) {
+                shared.journalIndex.sync();
+            }
+            shared.unsyncedChanges = 0;
+            shared.syncTime = System.nanoTime();
+        } finally {
+            if (isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
     /**
      * Prints the current DBF file's structure to <code>System.out</code>.
      */
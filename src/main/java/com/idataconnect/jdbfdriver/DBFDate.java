@@ -32,6 +32,7 @@
 package com.idataconnect.jdbfdriver;
 
 import java.io.Serializable;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
@@ -46,6 +47,12 @@ public class DBFDate implements Serializable, Comparable<DBFDate>, Cloneable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The epoch day returned by the raw date accessors for a blank date.
+     * It lies far outside the range of dates a DBF can hold.
+     */
+    public static final int BLANK_EPOCH_DAY = Integer.MIN_VALUE;
+
     /**
      * Day of week names in English. This is simply to avoid having to call
      * the Java localization routines when printing the day names in English.
@@ -169,6 +176,74 @@ public class DBFDate implements Serializable, Comparable<DBFDate>, Cloneable {
         return new DBFDate(month, day, year);
     }
 
+    /**
+     * Gets the number of days between 1970-01-01 and this date. Unlike
+     * {@link #getJulianDay}, this uses only integer arithmetic, and matches
+     * {@link LocalDate#toEpochDay}.
+     *
+     * @return the epoch day, or {@link #BLANK_EPOCH_DAY} if the date is blank
+     */
+    public int getEpochDay() {
+        if (isBlank()) {
+            return BLANK_EPOCH_DAY;
+        }
+        return FieldDecoder.epochDay(getYear(), getMonth(), getDay());
+    }
+
+    /**
+     * Creates a DBF date from the given epoch day.
+     *
+     * @param epochDay the number of days since 1970-01-01, as returned by
+     *                 {@link #getEpochDay}
+     * @return a new DBF date instance, which is blank if
+     *         <code>epochDay</code> is {@link #BLANK_EPOCH_DAY}
+     */
+    public static DBFDate fromEpochDay(int epochDay) {
+        if (epochDay == BLANK_EPOCH_DAY) {
+            return new DBFDate();
+        }
+
+        // Count from 0000-03-01, so the leap day falls at the end of a year.
+        final int z = epochDay + 719468;
+        final int era = Math.floorDiv(z, 146097);
+        final int dayOfEra = z - era * 146097;
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int mp = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        return new DBFDate(month, day, year);
+    }
+
+    /**
+     * Converts this date to a <code>LocalDate</code>.
+     *
+     * @return the local date, or <code>null</code> if this date is blank
+     */
+    public LocalDate toLocalDate() {
+        if (isBlank()) {
+            return null;
+        }
+        return LocalDate.of(getYear(), getMonth(), getDay());
+    }
+
+    /**
+     * Creates a DBF date from the given <code>LocalDate</code>.
+     *
+     * @param date the local date to convert from, which may be
+     *             <code>null</code> for a blank date
+     * @return a new DBF date instance
+     */
+    public static DBFDate fromLocalDate(LocalDate date) {
+        if (date == null) {
+            return new DBFDate();
+        }
+        return new DBFDate(date.getMonthValue(), date.getDayOfMonth(), date.getYear());
+    }
+
     /**
      * Calculates the day of the week that the date represented by this date
      * object, occurs on. Sunday is zero, Monday is one, etc.
@@ -227,11 +302,12 @@ public class DBFDate implements Serializable, Comparable<DBFDate>, Cloneable {
     /**
      * {@inheritDoc}
      * <p>
-     * This implementation compares based on the Julian days.
+     * This implementation compares based on the epoch days, so blank dates
+     * sort before all others.
      * </p>
      */
     public int compareTo(DBFDate other) {
-        return Integer.valueOf(getJulianDay()).compareTo(Integer.valueOf(other.getJulianDay()));
+        return Integer.compare(getEpochDay(), other.getEpochDay());
     }
 
     /**
@@ -253,7 +329,7 @@ public class DBFDate implements Serializable, Comparable<DBFDate>, Cloneable {
     /**
      * {@inheritDoc}
      * <p>
-     * This implementation considers two dates equal if their Julian days
+     * This implementation considers two dates equal if their epoch days
      * are equal.
      * </p>
      */
@@ -264,19 +340,19 @@ public class DBFDate implements Serializable, Comparable<DBFDate>, Cloneable {
         }
 
         DBFDate other = (DBFDate) obj;
-        return getJulianDay() == other.getJulianDay();
+        return getEpochDay() == other.getEpochDay();
     }
 
     /**
      * {@inheritDoc}
      * <p>
      * This implementation uses the integer hash code of the
-     * Julian day.
+     * epoch day.
      * </p>
      */
     @Override
     public int hashCode() {
-        return Integer.valueOf(getJulianDay()).hashCode();
+        return Integer.hashCode(getEpochDay());
     }
 
     /**
@@ -31,10 +31,13 @@
 package com.idataconnect.jdbfdriver;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.RandomAccess;
 
 /**
@@ -47,7 +50,7 @@ public class DBFStructure implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private List<DBFField> fields = new LinkedList<DBFField>();
+    private List<DBFField> fields = new ArrayList<DBFField>();
     private boolean dbtPaired;
     private DBFDate lastUpdated;
     private int numberOfRecords;
@@ -57,6 +60,43 @@ public class DBFStructure implements Serializable {
     private boolean dataEncrypted;
     private boolean mdxPaired;
     private boolean memoExists;
+    private int codePage;
+    /** The compiled layout of the fields, built on demand. */
+    private transient Layout layout;
+    /** The codec for the character set, looked up on demand. */
+    private transient TextCodec textCodec;
+
+    /**
+     * The fields of a record compiled into arrays, along with a map of the
+     * upper cased field names, so that fields can be found and located
+     * within a record in constant time.
+     */
+    private static final class Layout {
+
+        final int[] offsets;
+        final int[] lengths;
+        final DBFField.FieldType[] types;
+        final Map<String, Integer> indexByName;
+
+        Layout(List<DBFField> fields) {
+            offsets = new int[fields.size()];
+            lengths = new int[fields.size()];
+            types = new DBFField.FieldType[fields.size()];
+            indexByName = new HashMap<>(fields.size() * 2);
+            int offset = 1; // Skip over deleted flag
+            for (int count = 0; count < offsets.length; count++) {
+                DBFField field = fields.get(count);
+                offsets[count] = offset;
+                lengths[count] = field.getFieldLength();
+                types[count] = field.getFieldType();
+                if (field.getFieldName() != null) {
+                    // The first of any duplicate names wins, as it always has
+                    indexByName.putIfAbsent(field.getFieldName().toUpperCase(Locale.ROOT), count);
+                }
+                offset += lengths[count];
+            }
+        }
+    }
 
     /**
      * Gets whether the DBF file is paired with a DBT file. This indicates
@@ -112,6 +152,85 @@ public class DBFStructure implements Serializable {
             newFields.addAll(fields);
             this.fields = newFields;
         }
+        layout = null;
+    }
+
+    /**
+     * Checks whether the given fields describe the same names, types and
+     * lengths as the current ones, so that a header read back unchanged can
+     * keep the current fields and their compiled layout.
+     * @param fields the fields to compare with
+     * @return whether the fields match the current ones
+     */
+    boolean hasSameFields(List<DBFField> fields) {
+        if (fields.size() != this.fields.size()) {
+            return false;
+        }
+        for (int count = 0; count < fields.size(); count++) {
+            DBFField field = fields.get(count);
+            DBFField current = this.fields.get(count);
+            if (!field.getFieldName().equals(current.getFieldName())
+                    || field.getFieldType() != current.getFieldType()
+                    || field.getFieldLength() != current.getFieldLength()
+                    || field.getDecimalLength() != current.getDecimalLength()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the compiled layout of the fields, building it the first time it
+     * is needed after the fields are set.
+     */
+    private Layout layout() {
+        Layout current = layout;
+        if (current == null) {
+            current = new Layout(fields);
+            layout = current;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the offset of a field within a record. The first field starts at
+     * offset <em>1</em>, following the deleted flag.
+     * @param fieldIndex the zero based index of the field
+     * @return the offset of the field within a record
+     */
+    int getFieldOffset(int fieldIndex) {
+        return layout().offsets[fieldIndex];
+    }
+
+    /**
+     * Gets the length of a field.
+     * @param fieldIndex the zero based index of the field
+     * @return the length of the field
+     */
+    int getFieldLength(int fieldIndex) {
+        return layout().lengths[fieldIndex];
+    }
+
+    /**
+     * Gets the type of a field.
+     * @param fieldIndex the zero based index of the field
+     * @return the type of the field
+     */
+    DBFField.FieldType getFieldType(int fieldIndex) {
+        return layout().types[fieldIndex];
+    }
+
+    /**
+     * Gets the index of a field by name, ignoring case.
+     * @param fieldName the name of the field
+     * @return the zero based index of the field, or -1 if it doesn't exist
+     */
+    int getFieldIndex(String fieldName) {
+        if (fieldName == null) {
+            return -1;
+        }
+        Integer index = layout().indexByName.get(fieldName.toUpperCase(Locale.ROOT));
+        return index == null ? -1 : index;
     }
 
     /**
@@ -219,6 +338,66 @@ public class DBFStructure implements Serializable {
         this.mdxPaired = mdxPaired;
     }
 
+    /**
+     * Gets the code page of the DBF file, which is the language driver ID
+     * stored in byte 29 of the header.
+     * @return the language driver ID, or 0 if none is set
+     */
+    public int getCodePage() {
+        return codePage;
+    }
+
+    /**
+     * Sets the code page of the DBF file, which is the language driver ID
+     * stored in byte 29 of the header. For example, <em>0x03</em> stands for
+     * Windows ANSI (windows-1252) and <em>0x01</em> for DOS USA (IBM437).
+     * @param codePage the language driver ID, or 0 for none
+     */
+    public void setCodePage(int codePage) {
+        this.codePage = codePage & 0xff;
+    }
+
+    /**
+     * Sets the code page of the DBF file to one which stands for the given
+     * character set.
+     * @param charset the character set of the character data
+     * @throws IllegalArgumentException if no code page stands for the
+     * character set
+     */
+    public void setCharset(Charset charset) {
+        int languageDriverId = CodePages.languageDriverFor(charset);
+        if (languageDriverId == 0) {
+            throw new IllegalArgumentException("No DBF code page stands for " + charset);
+        }
+        setCodePage(languageDriverId);
+    }
+
+    /**
+     * Gets the character set which character and memo data is stored in.
+     * If the code page is not set, or is not known, this is the default
+     * character set of the driver.
+     * @return the character set
+     * @see DBF#setDefaultCharset(Charset)
+     */
+    public Charset getCharset() {
+        Charset charset = CodePages.charsetFor(codePage);
+        return charset != null ? charset : DBF.getDefaultCharset();
+    }
+
+    /**
+     * Gets the codec for the character set of the DBF file.
+     * @return the codec
+     */
+    TextCodec getTextCodec() {
+        final Charset charset = getCharset();
+        TextCodec codec = textCodec;
+        if (codec == null || codec.charset != charset) {
+            codec = TextCodec.forCharset(charset);
+            textCodec = codec;
+        }
+        return codec;
+    }
+
     /**
      * Whether a memo field exists. This is presumably the same value as
      * <code>isDbtPaired()</code>.
@@ -31,6 +31,7 @@
 package com.idataconnect.jdbfdriver;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
@@ -59,13 +60,25 @@ public class DBFValue {
      * @param value the data value
      */
     public void setValue(Object value) {
-        // Handle the case where they might set a date using a java.util.Date.
+        this.value = convert(value);
+    }
+
+    /**
+     * Converts a value given by the caller to the type it is held as.
+     * @param value the value to convert
+     * @return the converted value
+     */
+    static Object convert(Object value) {
+        // Handle the case where they might set a date using a java.util.Date
+        // or a LocalDate.
         if (value instanceof java.util.Date) {
             GregorianCalendar cal = new GregorianCalendar();
             cal.setTime((java.util.Date) value);
-            this.value = new DBFDate(cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.YEAR));
+            return new DBFDate(cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.YEAR));
+        } else if (value instanceof LocalDate) {
+            return DBFDate.fromLocalDate((LocalDate) value);
         } else {
-            this.value = value;
+            return value;
         }
     }
 
@@ -79,10 +92,15 @@ public class DBFValue {
 
     /**
      * Gets the data as a <code>String</code>. This is equivalent to calling
-     * <code>getValue().toString()</code>.
+     * <code>getValue().toString()</code>, except for binary values, whose
+     * bytes are decoded.
      * @return the value as a string
      */
     public String getString() {
+        Object value = getValue();
+        if (value instanceof byte[]) {
+            return new String((byte[]) value);
+        }
         return value.toString();
     }
 
@@ -95,7 +113,7 @@ public class DBFValue {
         if (!isNumeric()) {
             throw new IllegalStateException("getDouble() called on a value which is not numeric");
         } else {
-            return ((Number) value).doubleValue();
+            return ((Number) getValue()).doubleValue();
         }
     }
 
@@ -108,7 +126,7 @@ public class DBFValue {
         if (!isNumeric()) {
             throw new IllegalStateException("getInt() called on a value which is not numeric");
         } else {
-            return ((Number) value).intValue();
+            return ((Number) getValue()).intValue();
         }
     }
 
@@ -121,7 +139,7 @@ public class DBFValue {
         if (!isNumeric()) {
             throw new IllegalStateException("getBigDecimal() called on a value which is not numeric");
         } else {
-            return (BigDecimal) value;
+            return (BigDecimal) getValue();
         }
     }
 
@@ -131,6 +149,7 @@ public class DBFValue {
      * @return the value as a <code>boolean</code>
      */
     public boolean getBoolean() {
+        Object value = getValue();
         if (!(value instanceof Boolean)) {
             throw new IllegalStateException("getBoolean() called on a value which is not a boolean");
         } else {
@@ -160,6 +179,7 @@ public class DBFValue {
      * @return the value as a DBF date
      */
     public DBFDate getDate() {
+        Object value = getValue();
         if (!(value instanceof DBFDate)) {
             throw new IllegalStateException("getDate() called on a value which is not a date");
         } else {
@@ -167,6 +187,16 @@ public class DBFValue {
         }
     }
 
+    /**
+     * Gets the data as a <code>LocalDate</code>.
+     * @throws IllegalStateException if the value is not a date type
+     * @return the value as a local date, or <code>null</code> if the date
+     * is blank
+     */
+    public LocalDate getLocalDate() {
+        return getDate().toLocalDate();
+    }
+
     /**
      * Gets the data as bytes.
      * @return the value as as byte array
@@ -175,9 +205,9 @@ public class DBFValue {
         switch (getFieldType()) {
             case B:
             case G:
-                return (byte[]) value;
+                return (byte[]) getValue();
             default:
-                return value.toString().getBytes();
+                return getValue().toString().getBytes();
         }
     }
 
@@ -197,6 +227,6 @@ public class DBFValue {
      */
     @Override
     public String toString() {
-        return "[" + fieldType.getFullName() + ": " + value.toString() + "]";
+        return "[" + fieldType.getFullName() + ": " + getValue() + "]";
     }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.math.BigDecimal;
+
+/**
+ * Decodes field values out of raw record bytes. Records are kept in their
+ * on disk form, and fields are only decoded when their values are requested.
+ */
+final class FieldDecoder {
+
+    private FieldDecoder() {
+    }
+
+    /**
+     * Decodes the value of a field which is stored within the record itself.
+     * Memo fields, whose data is stored in the DBT, are not decoded by this
+     * method.
+     * @param field The field to decode.
+     * @param data The raw record bytes.
+     * @param offset The offset of the field within <code>data</code>.
+     * @param codec The codec for the character set of the table.
+     * @return The decoded value.
+     */
+    static DBFValue decode(DBFField field, byte[] data, int offset, TextCodec codec) {
+        final int length = field.getFieldLength();
+        switch (field.getFieldType()) {
+            case C:
+                if (DBF.isAutoTrimEnabled()) {
+                    return new DBFValue(field, codec.decodeTrimmed(data, offset, length));
+                } else {
+                    return new DBFValue(field, codec.decode(data, offset, length));
+                }
+            case N:
+            case F:
+                String dataString = new String(data, offset, length).trim();
+                if (dataString.length() == 0) {
+                    return new DBFValue(field, field.getDefaultValue().getValue());
+                } else {
+                    return new DBFValue(field, new BigDecimal(dataString));
+                }
+            case D:
+                if (length == 0 || data[offset] == ' ' || data[offset] == 0) {
+                    // Blank date
+                    return new DBFValue(field, new DBFDate(0, 0, 0));
+                } else {
+                    int year = parseDigits(data, offset, 4);
+                    int month = parseDigits(data, offset + 4, 2);
+                    int day = parseDigits(data, offset + 6, 2);
+                    return new DBFValue(field, new DBFDate(month, day, year));
+                }
+            case L:
+                byte b = data[offset];
+                return new DBFValue(field, (b == 'y' || b == 'Y' || b == 't' || b == 'T') ? Boolean.TRUE : Boolean.FALSE);
+            case U:
+            default:
+                return new DBFValue(field, "");
+        }
+    }
+
+    /** Powers of ten which are exactly representable as a double. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * Parses the integer portion of a numeric field straight from the raw
+     * record bytes. Any decimal portion is truncated, and a blank field is
+     * parsed as zero.
+     * @param data The raw record bytes.
+     * @param offset The offset of the field within <code>data</code>.
+     * @param length The length of the field.
+     * @return The integer portion of the value.
+     * @throws NumberFormatException If the field does not hold a number.
+     * @throws ArithmeticException If the integer portion does not fit in a
+     * long.
+     */
+    static long parseLong(byte[] data, int offset, int length) {
+        int pos = offset;
+        final int end = offset + length;
+        while (pos < end && data[pos] == ' ') {
+            pos++;
+        }
+        boolean negative = false;
+        if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+            negative = data[pos] == '-';
+            pos++;
+        }
+        // Accumulated as a negative number, which reaches Long.MIN_VALUE.
+        long value = 0;
+        for (; pos < end; pos++) {
+            byte b = data[pos];
+            if (b >= '0' && b <= '9') {
+                value = Math.subtractExact(Math.multiplyExact(value, 10), b - '0');
+            } else if (b == '.') {
+                // Truncate the decimal portion, but still validate it.
+                while (++pos < end && data[pos] >= '0' && data[pos] <= '9') {}
+                break;
+            } else {
+                break;
+            }
+        }
+        checkTrailingSpaces(data, pos, end, offset, length);
+        return negative ? value : Math.negateExact(value);
+    }
+
+    /**
+     * Parses a numeric field straight from the raw record bytes. A blank
+     * field is parsed as zero. Values with up to 15 significant digits, which
+     * covers the usual N and F field lengths, are parsed without allocation
+     * and give the same result as {@link Double#parseDouble}.
+     * @param data The raw record bytes.
+     * @param offset The offset of the field within <code>data</code>.
+     * @param length The length of the field.
+     * @return The value of the field.
+     * @throws NumberFormatException If the field does not hold a number.
+     */
+    static double parseDouble(byte[] data, int offset, int length) {
+        int pos = offset;
+        final int end = offset + length;
+        while (pos < end && data[pos] == ' ') {
+            pos++;
+        }
+        boolean negative = false;
+        if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+            negative = data[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; pos < end; pos++) {
+            byte b = data[pos];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b == 'e' || b == 'E' || digits > 15) {
+                // Exponents and long mantissas take the slow path.
+                return Double.parseDouble(new String(data, offset, length).trim());
+            } else {
+                break;
+            }
+        }
+        if (digits > 15 || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(data, offset, length).trim());
+        }
+        checkTrailingSpaces(data, pos, end, offset, length);
+        // Both operands are exact, so the division is correctly rounded.
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a date field, stored as <em>YYYYMMDD</em>, straight from the raw
+     * record bytes into the number of days since 1970-01-01.
+     * @param data The raw record bytes.
+     * @param offset The offset of the field within <code>data</code>.
+     * @return The epoch day, or {@link DBFDate#BLANK_EPOCH_DAY} if the date
+     * is blank.
+     * @throws NumberFormatException If the field does not hold a date.
+     */
+    static int parseEpochDay(byte[] data, int offset) {
+        if (data[offset] == ' ' || data[offset] == 0) {
+            return DBFDate.BLANK_EPOCH_DAY;
+        }
+        int year = parseDigits(data, offset, 4);
+        int month = parseDigits(data, offset + 4, 2);
+        int day = parseDigits(data, offset + 6, 2);
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Parses a logical field straight from the raw record bytes.
+     * @param b The byte stored in the field.
+     * @return Whether the field holds a true value.
+     */
+    static boolean parseLogical(byte b) {
+        return b == 'y' || b == 'Y' || b == 't' || b == 'T';
+    }
+
+    /**
+     * Computes the number of days since 1970-01-01 for the given date in the
+     * proleptic Gregorian calendar, without allocating.
+     * @param year the year
+     * @param month the month, starting at 1
+     * @param day the day of the month, starting at 1
+     * @return the epoch day
+     */
+    static int epochDay(int year, int month, int day) {
+        // Shift the year to start in March, so the leap day is last.
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = Math.floorDiv(y, 400);
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Parses a fixed number of ASCII digits.
+     */
+    private static int parseDigits(byte[] data, int offset, int length) {
+        int value = 0;
+        for (int pos = offset; pos < offset + length; pos++) {
+            byte b = data[pos];
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("For input string: \""
+                        + new String(data, offset, length) + "\"");
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Makes sure only spaces follow the parsed portion of a numeric field.
+     */
+    private static void checkTrailingSpaces(byte[] data, int pos, int end, int offset, int length) {
+        for (; pos < end; pos++) {
+            if (data[pos] != ' ' && data[pos] != 0) {
+                throw new NumberFormatException("For input string: \""
+                        + new String(data, offset, length).trim() + "\"");
+            }
+        }
+    }
+}
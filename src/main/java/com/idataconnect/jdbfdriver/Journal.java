@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The undo journal of a transaction. Before a page of a file taking part in
+ * the transaction is changed for the first time, its original contents are
+ * appended to the journal, and the journal is forced to disk. Rolling back
+ * writes the original pages back, and truncates each file to the length it
+ * had when it joined the transaction, which removes anything appended.
+ * <p>
+ * The journal consists of entries, each starting with a type byte. A file
+ * entry holds the number of the file within the journal, its original
+ * length and its path. An image entry holds the file number, the position
+ * and the original bytes of a page. An incomplete entry at the end of the
+ * journal, left by a crash while it was being written, is ignored, since the
+ * page it belongs to was not changed yet.
+ * </p>
+ * <p>
+ * The journal is locked while the transaction is in progress, so that it
+ * is not mistaken for the journal of a crashed transaction by another
+ * process opening the table.
+ * </p>
+ * @see DBF#beginTransaction
+ */
+public final class Journal implements Closeable {
+
+    /** The size of the pages whose original contents are saved. */
+    static final int PAGE_SIZE = 512;
+
+    private static final byte FILE_ENTRY = 'F';
+    private static final byte IMAGE_ENTRY = 'I';
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final List<Target> targets = new ArrayList<>();
+    /** The length of the journal, where the next entry is written. */
+    private long length;
+
+    /**
+     * A file taking part in a transaction, whose pages are saved to the
+     * journal before they are changed.
+     */
+    public final class Target {
+        private final int number;
+        private final FileChannel channel;
+        private final long originalLength;
+        private final Set<Long> savedPages = new HashSet<>();
+
+        private Target(int number, FileChannel channel, long originalLength) {
+            this.number = number;
+            this.channel = channel;
+            this.originalLength = originalLength;
+        }
+
+        /**
+         * Saves the original contents of the pages a write is about to
+         * change, unless they were saved already or lie past the original
+         * end of the file. This must be called before every write to the
+         * file during the transaction.
+         * @param position The position of the write.
+         * @param length The number of bytes to be written.
+         * @throws IOException If an I/O error occurs.
+         */
+        public void beforeWrite(long position, int length) throws IOException {
+            saveImages(this, position, length);
+        }
+    }
+
+    private Journal(File file, RandomAccessFile randomAccessFile, FileLock lock) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.channel = randomAccessFile.getChannel();
+        this.lock = lock;
+    }
+
+    /**
+     * Creates an empty journal, replacing any existing file, and locks it.
+     * @param file The journal file.
+     * @return The new journal.
+     * @throws IOException If the journal is locked by another transaction,
+     * or an I/O error occurs.
+     */
+    static Journal create(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileLock lock = tryLock(randomAccessFile.getChannel());
+            if (lock == null) {
+                throw new IOException("Journal is in use: " + file.getAbsolutePath());
+            }
+            randomAccessFile.setLength(0);
+            return new Journal(file, randomAccessFile, lock);
+        } catch (IOException | RuntimeException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Attempts to lock the whole of a journal.
+     * @return The lock, or <code>null</code> if the journal is locked by
+     * another transaction, in this process or another.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a file to the transaction, recording its current length. Adding
+     * the same channel again returns the existing target.
+     * @param file The path of the file, used to find it during recovery.
+     * @param fileChannel The channel the file is written through.
+     * @return The target to report writes to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized Target register(File file, FileChannel fileChannel) throws IOException {
+        for (Target target : targets) {
+            if (target.channel == fileChannel) {
+                return target;
+            }
+        }
+        final Target target = new Target(targets.size(), fileChannel, fileChannel.size());
+        final byte[] path = file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer entry = ByteBuffer.allocate(15 + path.length).order(ByteOrder.LITTLE_ENDIAN);
+        entry.put(FILE_ENTRY);
+        entry.putShort((short) target.number);
+        entry.putLong(target.originalLength);
+        entry.putInt(path.length);
+        entry.put(path);
+        entry.flip();
+        append(entry);
+        channel.force(false);
+        targets.add(target);
+        return target;
+    }
+
+    private synchronized void saveImages(Target target, long position, int length)
+            throws IOException {
+        final long end = Math.min(position + length, target.originalLength);
+        boolean saved = false;
+        for (long page = position / PAGE_SIZE; page * PAGE_SIZE < end; page++) {
+            if (!target.savedPages.add(page)) {
+                continue;
+            }
+            final long pagePosition = page * PAGE_SIZE;
+            final int pageLength = (int) Math.min(PAGE_SIZE, target.originalLength - pagePosition);
+            final ByteBuffer entry = ByteBuffer.allocate(15 + pageLength).order(ByteOrder.LITTLE_ENDIAN);
+            entry.put(IMAGE_ENTRY);
+            entry.putShort((short) target.number);
+            entry.putLong(pagePosition);
+            entry.putInt(pageLength);
+            while (entry.hasRemaining()) {
+                if (target.channel.read(entry, pagePosition + entry.position() - 15) == -1) {
+                    throw new IOException("End of file encountered while saving a page");
+                }
+            }
+            entry.flip();
+            append(entry);
+            saved = true;
+        }
+        if (saved) {
+            // The original page must be on disk before it is overwritten.
+            channel.force(false);
+        }
+    }
+
+    private void append(ByteBuffer entry) throws IOException {
+        while (entry.hasRemaining()) {
+            length += channel.write(entry, length);
+        }
+    }
+
+    /**
+     * Restores the original contents and lengths of every file in the
+     * transaction, through the channels they were registered with, and
+     * forces them to disk.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized void rollback() throws IOException {
+        final List<FileChannel> channels = new ArrayList<>();
+        for (Target target : targets) {
+            channels.add(target.channel);
+        }
+        restore(channel, channels);
+    }
+
+    /**
+     * Rolls back the transaction recorded in the given journal file, left by
+     * a crash, by opening each file it names.
+     * @param file The journal file.
+     * @return Whether the transaction was rolled back, which it is not if
+     * the journal is locked because the transaction is still in progress.
+     * @throws IOException If an I/O error occurs.
+     */
+    static boolean recover(File file) throws IOException {
+        final List<RandomAccessFile> opened = new ArrayList<>();
+        try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+            if (tryLock(journal.getChannel()) == null) {
+                return false;
+            }
+            final List<FileChannel> channels = new ArrayList<>();
+            for (String path : readPaths(journal.getChannel())) {
+                RandomAccessFile target = new RandomAccessFile(path, "rw");
+                opened.add(target);
+                channels.add(target.getChannel());
+            }
+            restore(journal.getChannel(), channels);
+            return true;
+        } finally {
+            for (RandomAccessFile target : opened) {
+                target.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes a journal left behind by a transaction which was committed,
+     * unless it is locked because a transaction is in progress.
+     * @param file The journal file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void discard(File file) throws IOException {
+        try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+            if (tryLock(journal.getChannel()) == null) {
+                return;
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete journal: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads the paths of the files in a journal, by file number.
+     */
+    private static List<String> readPaths(FileChannel journal) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        for (Entry entry : readEntries(journal)) {
+            if (entry.type == FILE_ENTRY) {
+                paths.add(new String(entry.data, StandardCharsets.UTF_8));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Writes the saved pages back to the given channels, by file number,
+     * then truncates the files to their original lengths and forces them.
+     */
+    private static void restore(FileChannel journal, List<FileChannel> channels)
+            throws IOException {
+        final Map<Integer, Long> originalLengths = new HashMap<>();
+        for (Entry entry : readEntries(journal)) {
+            if (entry.fileNumber >= channels.size()) {
+                throw new IOException("Journal refers to an unknown file");
+            }
+            final FileChannel target = channels.get(entry.fileNumber);
+            if (entry.type == FILE_ENTRY) {
+                originalLengths.put(entry.fileNumber, entry.value);
+            } else {
+                ByteBuffer image = ByteBuffer.wrap(entry.data);
+                long position = entry.value;
+                while (image.hasRemaining()) {
+                    position += target.write(image, position);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Long> original : originalLengths.entrySet()) {
+            final FileChannel target = channels.get(original.getKey());
+            if (target.size() > original.getValue()) {
+                target.truncate(original.getValue());
+            }
+            target.force(false);
+        }
+    }
+
+    /** An entry read back from a journal. */
+    private static final class Entry {
+        final byte type;
+        final int fileNumber;
+        /** The original length for a file entry, or the position for an image. */
+        final long value;
+        /** The path for a file entry, or the original bytes for an image. */
+        final byte[] data;
+
+        Entry(byte type, int fileNumber, long value, byte[] data) {
+            this.type = type;
+            this.fileNumber = fileNumber;
+            this.value = value;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Reads the complete entries of a journal, stopping at the first
+     * incomplete or unrecognized one.
+     */
+    private static List<Entry> readEntries(FileChannel journal) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        final long size = journal.size();
+        final ByteBuffer header = ByteBuffer.allocate(15).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0;
+        while (position + header.capacity() <= size) {
+            header.clear();
+            while (header.hasRemaining()) {
+                if (journal.read(header, position + header.position()) == -1) {
+                    return entries;
+                }
+            }
+            header.flip();
+            final byte type = header.get();
+            final int fileNumber = header.getShort() & 0xffff;
+            final long value = header.getLong();
+            final int dataLength = header.getInt();
+            if ((type != FILE_ENTRY && type != IMAGE_ENTRY) || dataLength < 0
+                    || position + header.capacity() + dataLength > size) {
+                break;
+            }
+            final ByteBuffer data = ByteBuffer.allocate(dataLength);
+            while (data.hasRemaining()) {
+                if (journal.read(data, position + header.capacity() + data.position()) == -1) {
+                    return entries;
+                }
+            }
+            entries.add(new Entry(type, fileNumber, value, data.array()));
+            position += header.capacity() + dataLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Closes and deletes the journal file.
+     * @throws IOException If an I/O error occurs.
+     */
+    void delete() throws IOException {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete journal: " + file.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lock.isValid()) {
+            lock.release();
+        }
+        randomAccessFile.close();
+    }
+}
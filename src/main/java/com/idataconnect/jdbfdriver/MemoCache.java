@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of memo values, keyed by the number of the
+ * DBT block where each value starts. The cache is bounded by the
+ * approximate number of bytes its values occupy, rather than by the number
+ * of entries, so a few large values cannot push out everything else
+ * unnoticed.
+ * <p>
+ * A value read from the DBT while the same block is being rewritten may be
+ * stale, so values read without holding a lock are cached with the
+ * {@link #stamp} taken before the read, and are dropped if any value was
+ * invalidated in the meantime.
+ * </p>
+ */
+final class MemoCache {
+
+    private final long maximumBytes;
+    private long currentBytes;
+    private long invalidations;
+    private final LinkedHashMap<Integer, Object> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Creates a cache.
+     * @param maximumBytes the most bytes the cached values may occupy
+     */
+    MemoCache(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * Gets the most bytes the cached values may occupy.
+     * @return the size of the cache
+     */
+    long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Gets a cached value, marking it as recently used. Cached byte arrays
+     * are copied, so callers cannot change the cached value.
+     * @param blockNumber the block number of the value
+     * @return the value, or <code>null</code> if it is not cached
+     */
+    synchronized Object get(int blockNumber) {
+        Object value = entries.get(blockNumber);
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used values until the
+     * cache is back within its size. Values larger than the whole cache are
+     * not cached.
+     * @param blockNumber the block number of the value
+     * @param value the value, which is a <code>String</code> or a byte array
+     */
+    synchronized void put(int blockNumber, Object value) {
+        final long size = sizeOf(value);
+        if (size > maximumBytes) {
+            return;
+        }
+        if (value instanceof byte[]) {
+            value = ((byte[]) value).clone();
+        }
+        Object previous = entries.put(blockNumber, value);
+        if (previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += size;
+        Iterator<Map.Entry<Integer, Object>> i = entries.entrySet().iterator();
+        while (currentBytes > maximumBytes && i.hasNext()) {
+            currentBytes -= sizeOf(i.next().getValue());
+            i.remove();
+        }
+    }
+
+    /**
+     * Caches a value read from the DBT, unless a value has been invalidated
+     * since the read began, in which case the value read may be stale.
+     * @param blockNumber the block number of the value
+     * @param value the value, which is a <code>String</code> or a byte array
+     * @param stamp the stamp taken before the value was read
+     * @see #stamp
+     */
+    synchronized void put(int blockNumber, Object value, long stamp) {
+        if (stamp == invalidations) {
+            put(blockNumber, value);
+        }
+    }
+
+    /**
+     * Gets a stamp which changes each time a value is invalidated, to be
+     * taken before reading a value which is to be cached.
+     * @return the stamp
+     */
+    synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Removes a value which has been rewritten or moved.
+     * @param blockNumber the block number of the value
+     */
+    synchronized void invalidate(int blockNumber) {
+        invalidations++;
+        Object previous = entries.remove(blockNumber);
+        if (previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+    }
+
+    /**
+     * Gets the approximate number of bytes a value occupies.
+     */
+    private static long sizeOf(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return ((String) value).length() * 2L;
+    }
+}
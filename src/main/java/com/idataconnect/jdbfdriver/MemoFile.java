@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A DBT (memo) file which stays open for as long as the DBF it belongs to.
+ * The block length is read from the header once, when the file is opened.
+ * All reads and writes are positional, so they do not depend on, or
+ * disturb, the position of the channel.
+ */
+final class MemoFile implements Closeable {
+
+    /** The length of the header which starts each block holding a value. */
+    static final int BLOCK_HEADER_LENGTH = 8;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final int blockLength;
+    /** The lock of the DBF, which guards file locks on the channel. */
+    private final ReentrantLock threadLock;
+    /** The stream writing a value to the end of the file, if there is one. */
+    private MemoOutputStream writer;
+    /** The journal of the current transaction, or null if there is none. */
+    private Journal.Target journal;
+
+    private MemoFile(RandomAccessFile randomAccessFile, int blockLength, ReentrantLock threadLock) {
+        this.randomAccessFile = randomAccessFile;
+        this.channel = randomAccessFile.getChannel();
+        this.blockLength = blockLength;
+        this.threadLock = threadLock;
+    }
+
+    /**
+     * Opens an existing DBT file and reads its block length.
+     * @param dbtFile the DBT file
+     * @param threadLock the lock of the DBF which owns the DBT
+     * @return the opened memo file
+     * @throws IOException if the file cannot be opened, or is corrupt
+     */
+    static MemoFile open(File dbtFile, ReentrantLock threadLock) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(dbtFile,
+                "rw" + (DBF.isSynchronousWritesEnabled() ? "s" : ""));
+        try {
+            ByteBuffer header = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(randomAccessFile.getChannel(), header, 20,
+                    "End of file encountered while reading DBT header");
+            int blockLength = header.getShort(0) & 0xffff; // Unsigned short
+            if (blockLength < 64) {
+                throw new IOException("DBT appears to be corrupt. Block length (" + blockLength + ") < 64 blocks (512 bytes)");
+            }
+            return new MemoFile(randomAccessFile, blockLength, threadLock);
+        } catch (IOException | RuntimeException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the length of a block, which is cached when the file is opened.
+     * @return the block length, in bytes
+     */
+    int getBlockLength() {
+        return blockLength;
+    }
+
+    /**
+     * Reads the length of the value stored at the given block, checking the
+     * block header along the way.
+     * @param blockNumber the number of the first block of the value
+     * @return the length of the value, not including the block header
+     * @throws IOException if an I/O error occurs, or the block is corrupt
+     */
+    int readValueLength(int blockNumber) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, (long) blockNumber * blockLength,
+                "End of file encountered while reading DBT block header");
+        byte byte1 = header.get(0);
+        byte byte2 = header.get(1);
+        byte byte3 = header.get(2);
+        byte byte4 = header.get(3);
+        if (byte1 != (byte) 0xff || byte2 != (byte) 0xff || byte3 != (byte) 0x08 || byte4 != (byte) 0x00) {
+            throw new IOException("DBT appears to be corrupt. Block header start: " + String.format("0x%02x 0x%02x 0x%02x 0x%02x", byte1, byte2, byte3, byte4));
+        }
+        // 32-bit unsigned that won't overflow, including the header length
+        return header.getInt(4) - BLOCK_HEADER_LENGTH;
+    }
+
+    /**
+     * Reads the value stored at the given block.
+     * @param blockNumber the number of the first block of the value
+     * @return the bytes of the value
+     * @throws IOException if an I/O error occurs, or the block is corrupt
+     */
+    byte[] read(int blockNumber) throws IOException {
+        byte[] valueBytes = new byte[readValueLength(blockNumber)];
+        ByteBuffer target = ByteBuffer.wrap(valueBytes);
+        final long position = (long) blockNumber * blockLength + BLOCK_HEADER_LENGTH;
+        while (target.hasRemaining()) {
+            if (lockedRead(target, position + target.position()) == -1) {
+                throw new IOException("End of file encountered while reading DBT block");
+            }
+        }
+        return valueBytes;
+    }
+
+    /**
+     * Opens a stream over the value stored at the given block, which reads
+     * the value a piece at a time rather than all at once.
+     * @param blockNumber the number of the first block of the value
+     * @return a stream of the bytes of the value
+     * @throws IOException if an I/O error occurs, or the block is corrupt
+     */
+    InputStream openInputStream(int blockNumber) throws IOException {
+        return new MemoInputStream((long) blockNumber * blockLength + BLOCK_HEADER_LENGTH,
+                readValueLength(blockNumber));
+    }
+
+    /**
+     * Opens a stream which writes a new value to the end of the file. The
+     * value's block number is known once the stream is closed, and until
+     * then no other value may be written to the file. A stream which is
+     * never closed is abandoned when the file is closed.
+     * @return the stream
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if another value is being streamed
+     */
+    MemoOutputStream openOutputStream() throws IOException {
+        if (DBF.isThreadSafetyEnabled()) {
+            threadLock.lock();
+        }
+        try {
+            checkNoWriter();
+            writer = new MemoOutputStream();
+            return writer;
+        } finally {
+            if (DBF.isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads part of a value, holding a shared lock on the bytes being read
+     * if file locking is enabled.
+     */
+    private int lockedRead(ByteBuffer target, long position) throws IOException {
+        final boolean lockThread = DBF.isThreadSafetyEnabled() && DBF.isFileLockingEnabled();
+        if (lockThread) {
+            threadLock.lock();
+        }
+        FileLock lock = null;
+        try {
+            if (DBF.isFileLockingEnabled()) {
+                lock = channel.lock(position, target.remaining(), true);
+            }
+            return channel.read(target, position);
+        } finally {
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockThread) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    private void checkNoWriter() {
+        if (writer != null) {
+            throw new IllegalStateException("A memo value is being streamed to the DBT");
+        }
+    }
+
+    /**
+     * Writes a value, reusing the blocks of the value it replaces if they
+     * are large enough, and otherwise appending new blocks to the file.
+     * @param oldBlockNumber the first block of the value being replaced, or
+     * 0 if there is no value
+     * @param value the bytes of the new value
+     * @return the number of the first block of the new value, to be stored
+     * in the DBF
+     * @throws IOException if an I/O error occurs
+     */
+    int write(int oldBlockNumber, byte[] value) throws IOException {
+        final int newBlocksRequired = blocksRequired(value.length);
+        if (DBF.isThreadSafetyEnabled()) {
+            threadLock.lock();
+        }
+        try {
+            checkNoWriter();
+            int blockNumber;
+            if (oldBlockNumber > 0
+                    && newBlocksRequired <= blocksRequired(readValueLength(oldBlockNumber))) {
+                blockNumber = oldBlockNumber;
+            } else {
+                blockNumber = allocateBlocks(newBlocksRequired);
+            }
+
+            // Build the block header, the value, and the null padding which
+            // keeps the file size divisible by the block length.
+            ByteBuffer blocks = ByteBuffer.allocate(newBlocksRequired * blockLength)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            blocks.put((byte) 0xff);
+            blocks.put((byte) 0xff);
+            blocks.put((byte) 0x08);
+            blocks.put((byte) 0x00);
+            blocks.putInt(value.length + BLOCK_HEADER_LENGTH);
+            blocks.put(value);
+            blocks.clear();
+
+            final long position = (long) blockNumber * blockLength;
+            FileLock lock = null;
+            if (DBF.isFileLockingEnabled()) {
+                lock = channel.lock(position, blocks.remaining(), false);
+            }
+            try {
+                writeFully(blocks, position);
+            } finally {
+                if (lock != null) {
+                    lock.release();
+                }
+            }
+            return blockNumber;
+        } finally {
+            if (DBF.isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reserves blocks at the end of the file by advancing the next available
+     * block number in the header.
+     * @param count the number of blocks to reserve
+     * @return the number of the first reserved block
+     * @throws IOException if an I/O error occurs
+     */
+    private int allocateBlocks(int count) throws IOException {
+        FileLock lock = null;
+        if (DBF.isFileLockingEnabled()) {
+            lock = channel.lock(0, 4, false);
+        }
+        try {
+            ByteBuffer nextAvailable = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, nextAvailable, 0,
+                    "End of file encountered while reading DBT header");
+            int nextAvailableBlock = nextAvailable.getInt(0);
+            nextAvailable.putInt(0, nextAvailableBlock + count);
+            nextAvailable.clear();
+            writeFully(nextAvailable, 0);
+            return nextAvailableBlock;
+        } finally {
+            if (lock != null) {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of blocks needed to store a value of the given length,
+     * along with its block header.
+     */
+    private int blocksRequired(int valueLength) {
+        return (int) (((long) valueLength + BLOCK_HEADER_LENGTH + blockLength - 1) / blockLength);
+    }
+
+    /**
+     * Makes the file take part in a transaction, or stops it from taking
+     * part if the journal is <code>null</code>.
+     */
+    void setJournal(Journal journal, File dbtFile) throws IOException {
+        this.journal = journal == null ? null : journal.register(dbtFile, channel);
+    }
+
+    /**
+     * Forces any changes to the file to disk.
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (DBF.isThreadSafetyEnabled()) {
+            threadLock.lock();
+        }
+        try {
+            if (writer != null) {
+                writer.abandon();
+            }
+        } finally {
+            if (DBF.isThreadSafetyEnabled()) {
+                threadLock.unlock();
+            }
+        }
+        randomAccessFile.close();
+    }
+
+    /**
+     * Reads a value straight from the file, in pieces as large as the
+     * caller asks for.
+     */
+    private class MemoInputStream extends InputStream {
+
+        private long position;
+        private int remaining;
+
+        MemoInputStream(long position, int length) {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (remaining == 0) {
+                return -1;
+            }
+            int count = lockedRead(ByteBuffer.wrap(b, off, Math.min(len, remaining)), position);
+            if (count == -1) {
+                throw new IOException("End of file encountered while reading DBT block");
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return remaining;
+        }
+    }
+
+    /**
+     * Writes a new value to the blocks at the end of the file. The block
+     * header, which holds the length of the value, and the next available
+     * block in the file header are written when the stream is closed.
+     */
+    class MemoOutputStream extends OutputStream {
+
+        private final ByteBuffer pending = ByteBuffer.allocate(8192);
+        private final FileLock headerLock;
+        private final int blockNumber;
+        private long length;
+        private boolean closed;
+        private boolean abandoned;
+
+        MemoOutputStream() throws IOException {
+            // Hold the next available block until the value is complete, so
+            // that other processes append their values after it.
+            headerLock = DBF.isFileLockingEnabled() ? channel.lock(0, 4, false) : null;
+            try {
+                ByteBuffer nextAvailable = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, nextAvailable, 0,
+                        "End of file encountered while reading DBT header");
+                blockNumber = nextAvailable.getInt(0);
+            } catch (IOException | RuntimeException ex) {
+                if (headerLock != null) {
+                    headerLock.release();
+                }
+                throw ex;
+            }
+        }
+
+        /**
+         * Gets the number of the first block of the value.
+         * @return the block number
+         */
+        int getBlockNumber() {
+            return blockNumber;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            if (!pending.hasRemaining()) {
+                flushPending();
+            }
+            pending.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            while (len > 0) {
+                if (!pending.hasRemaining()) {
+                    flushPending();
+                }
+                int count = Math.min(len, pending.remaining());
+                pending.put(b, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        private void flushPending() throws IOException {
+            pending.flip();
+            length += pending.remaining();
+            if (length > Integer.MAX_VALUE - BLOCK_HEADER_LENGTH) {
+                throw new IOException("Memo value too large for the DBT");
+            }
+            writeFully(pending, (long) blockNumber * blockLength + BLOCK_HEADER_LENGTH
+                    + length - pending.remaining());
+            pending.clear();
+        }
+
+        /**
+         * Finishes the value by writing its block header, padding the last
+         * block with nulls, and moving the next available block past it.
+         */
+        @Override
+        public void close() throws IOException {
+            if (abandoned) {
+                throw new IOException("The DBT was closed before the memo value was complete");
+            } else if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flushPending();
+                final long start = (long) blockNumber * blockLength;
+                ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+                header.put((byte) 0xff);
+                header.put((byte) 0xff);
+                header.put((byte) 0x08);
+                header.put((byte) 0x00);
+                header.putInt((int) length + BLOCK_HEADER_LENGTH);
+                header.flip();
+                writeFully(header, start);
+
+                final int blocks = blocksRequired((int) length);
+                final long end = start + BLOCK_HEADER_LENGTH + length;
+                ByteBuffer padding = ByteBuffer.allocate((int) (start + (long) blocks * blockLength - end));
+                writeFully(padding, end);
+
+                ByteBuffer nextAvailable = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                nextAvailable.putInt(0, blockNumber + blocks);
+                writeFully(nextAvailable, 0);
+            } finally {
+                releaseWriter();
+            }
+        }
+
+        /**
+         * Gives up on a value which was never finished, leaving the next
+         * available block where it was, so that the blocks written so far
+         * are reused by the next value. Called with the thread lock held.
+         */
+        void abandon() throws IOException {
+            closed = true;
+            abandoned = true;
+            if (headerLock != null && headerLock.isValid()) {
+                headerLock.release();
+            }
+            writer = null;
+        }
+
+        private void releaseWriter() throws IOException {
+            if (DBF.isThreadSafetyEnabled()) {
+                threadLock.lock();
+            }
+            try {
+                if (headerLock != null) {
+                    headerLock.release();
+                }
+                writer = null;
+            } finally {
+                if (DBF.isThreadSafetyEnabled()) {
+                    threadLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        if (journal != null) {
+            journal.beforeWrite(position + source.position(), source.remaining());
+        }
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position,
+            String eofMessage) throws IOException {
+        final int start = target.position();
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position() - start) == -1) {
+                throw new IOException(eofMessage);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The value of a memo field, which is only read from the DBT when it is
+ * first requested. Until then, the value is just the number of the block
+ * where it is stored, so records with memo fields can be read and scanned
+ * without touching the DBT.
+ */
+final class MemoValue extends DBFValue {
+
+    private final DBF dbf;
+    private final int blockNumber;
+    private boolean loaded;
+
+    /**
+     * Creates a handle for a memo value.
+     * @param dbf the DBF whose DBT holds the value
+     * @param field the memo field
+     * @param blockNumber the number of the block where the value starts
+     */
+    MemoValue(DBF dbf, DBFField field, int blockNumber) {
+        super(field, null);
+        this.dbf = dbf;
+        this.blockNumber = blockNumber;
+    }
+
+    /**
+     * Gets the number of the block where the value is stored.
+     * @return the block number
+     */
+    int getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The value is read from the DBT the first time this is called. An I/O
+     * error while reading it is thrown as an
+     * <code>UncheckedIOException</code>.
+     * </p>
+     */
+    @Override
+    public Object getValue() {
+        if (!loaded) {
+            try {
+                super.setValue(dbf.readMemo(getFieldType(), blockNumber));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            loaded = true;
+        }
+        return super.getValue();
+    }
+
+    @Override
+    public void setValue(Object value) {
+        super.setValue(value);
+        loaded = true;
+    }
+}
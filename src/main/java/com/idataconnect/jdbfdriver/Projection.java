@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.util.Arrays;
+
+/**
+ * The set of fields selected for a scan, along with their offsets within a
+ * record, which are worked out once when the scan is opened.
+ */
+final class Projection {
+
+    /** The selected field numbers, in the order they were given. */
+    final int[] fieldNumbers;
+    /** The offsets within a record of the selected fields. */
+    final int[] offsets;
+    /** The record offset of each field by index, or -1 if not selected. */
+    private final int[] offsetsByField;
+
+    /**
+     * Creates a projection of the given fields.
+     * @param structure The structure of the table.
+     * @param fieldNumbers The numbers of the fields to select, starting at 1.
+     * @throws IllegalArgumentException If a field number is out of range.
+     */
+    Projection(DBFStructure structure, int[] fieldNumbers) {
+        final int fieldCount = structure.getFields().size();
+        this.fieldNumbers = fieldNumbers.clone();
+        this.offsets = new int[fieldNumbers.length];
+        this.offsetsByField = new int[fieldCount];
+        Arrays.fill(offsetsByField, -1);
+        for (int count = 0; count < fieldNumbers.length; count++) {
+            int fieldNumber = fieldNumbers[count];
+            if (fieldNumber <= 0 || fieldNumber > fieldCount) {
+                throw new IllegalArgumentException("Field number " + fieldNumber
+                        + " is out of range (1 - " + fieldCount + ")");
+            }
+            offsets[count] = structure.getFieldOffset(fieldNumber - 1);
+            offsetsByField[fieldNumber - 1] = offsets[count];
+        }
+    }
+
+    /**
+     * Gets the offset within a record of a selected field.
+     * @param fieldNumber The number of the field.
+     * @return The offset of the field.
+     * @throws IllegalArgumentException If the field is not selected.
+     */
+    int getFieldOffset(int fieldNumber) {
+        int offset = fieldNumber > 0 && fieldNumber <= offsetsByField.length
+                ? offsetsByField[fieldNumber - 1] : -1;
+        if (offset < 0) {
+            throw new IllegalArgumentException("Field " + fieldNumber
+                    + " is not part of the scan");
+        }
+        return offset;
+    }
+}
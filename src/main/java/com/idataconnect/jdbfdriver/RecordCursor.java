@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A forward-only cursor over a range of records, in natural order. Rather
+ * than reading one record at a time, the cursor reads as many records as
+ * fit in its buffer with a single read, and hands out each record through
+ * the same {@link RecordView}.
+ * <pre>
+ * try (RecordCursor cursor = dbf.scan()) {
+ *     while (cursor.next()) {
+ *         RecordView record = cursor.record();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * A cursor is not thread safe, but any number of cursors may be open on the
+ * same DBF at once.
+ */
+public class RecordCursor implements Closeable {
+
+    /** The approximate number of bytes read at a time. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DBF dbf;
+    private final int recordLength;
+    private final int lastRecord;
+    private final byte[] chunk;
+    private final RecordView view;
+    private final RecordFilter.Matcher matcher;
+    /** The number of the record which the next call to next() visits. */
+    private int nextRecord;
+    /** The number of the first record held in the chunk. */
+    private int chunkFirstRecord;
+    /** The number of records held in the chunk. */
+    private int chunkRecords;
+    private boolean positioned;
+    private boolean closed;
+
+    /**
+     * Creates a cursor over a range of records.
+     * @param dbf The DBF to read from.
+     * @param firstRecord The number of the first record to visit.
+     * @param lastRecord The number of the last record to visit.
+     * @param projection The fields selected for the scan, or
+     * <code>null</code> for every field.
+     * @param matcher The filter records must pass, or <code>null</code> to
+     * visit every record.
+     */
+    RecordCursor(DBF dbf, int firstRecord, int lastRecord, Projection projection,
+            RecordFilter.Matcher matcher) {
+        this.dbf = dbf;
+        this.recordLength = dbf.getStructure().getRecordLength();
+        this.lastRecord = lastRecord;
+        this.matcher = matcher;
+        this.nextRecord = firstRecord;
+        int recordsPerChunk = Math.min(CHUNK_SIZE / recordLength, lastRecord - firstRecord + 1);
+        this.chunk = new byte[Math.max(1, recordsPerChunk) * recordLength];
+        this.view = new RecordView(dbf, projection);
+    }
+
+    /**
+     * Advances to the next record which passes the filter, if any, reading
+     * the next chunk of records from the file when the current one is used
+     * up.
+     * @return <code>true</code> if the cursor is positioned on a record, or
+     * <code>false</code> if there are no more records.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean next() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Cursor is closed");
+        }
+        while (nextRecord <= lastRecord) {
+            int index = nextRecord - chunkFirstRecord;
+            if (chunkRecords == 0 || index >= chunkRecords) {
+                chunkFirstRecord = nextRecord;
+                chunkRecords = Math.min(chunk.length / recordLength, lastRecord - nextRecord + 1);
+                dbf.readRecords(chunkFirstRecord, chunk, chunkRecords * recordLength);
+                index = 0;
+            }
+            final int recordNumber = nextRecord++;
+            final int offset = index * recordLength;
+            if (matcher == null || matcher.matches(chunk, offset)) {
+                view.set(chunk, offset, recordNumber);
+                positioned = true;
+                return true;
+            }
+        }
+        positioned = false;
+        return false;
+    }
+
+    /**
+     * Gets the view of the current record. The same view is returned for
+     * every record, so it is only valid until the next call to
+     * {@link #next()}.
+     * @return The view of the current record.
+     * @throws IllegalStateException If the cursor is not positioned on a
+     * record.
+     */
+    public RecordView record() {
+        if (!positioned) {
+            throw new IllegalStateException("Cursor is not positioned on a record");
+        }
+        return view;
+    }
+
+    /**
+     * Closes the cursor. The DBF itself is left open.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        positioned = false;
+    }
+}
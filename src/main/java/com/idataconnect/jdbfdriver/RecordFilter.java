@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+/**
+ * A condition which a scan applies to each record before any of its values
+ * are decoded. Filters are built with the factory methods of
+ * {@link RecordFilters}, and refer to fields by name. When the scan is
+ * opened, the filter is bound to the structure of the table, which resolves
+ * the names to offsets once, and the resulting matcher tests the raw bytes
+ * of each record.
+ */
+public interface RecordFilter {
+
+    /**
+     * Binds the filter to the structure of a table.
+     * @param structure the structure of the table being scanned
+     * @return a matcher for records of the table
+     * @throws IllegalArgumentException if a field does not exist or has the
+     * wrong type for the filter
+     */
+    Matcher bind(DBFStructure structure);
+
+    /**
+     * Tests raw records against a filter which is bound to a table.
+     */
+    @FunctionalInterface
+    interface Matcher {
+
+        /**
+         * Tests a record in its on disk form.
+         * @param data the buffer holding the record
+         * @param offset the offset of the record within <code>data</code>,
+         * which is where the deleted flag is
+         * @return whether the record passes the filter
+         */
+        boolean matches(byte[] data, int offset);
+    }
+}
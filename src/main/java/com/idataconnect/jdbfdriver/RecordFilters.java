@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.time.LocalDate;
+
+/**
+ * Factory methods for the filters which a scan can apply to raw records.
+ * None of the filters decode any values: character fields are compared byte
+ * by byte, against values encoded in the character set of the table,
+ * numbers are parsed in place, and dates are compared in their stored
+ * <em>YYYYMMDD</em> form.
+ * <pre>
+ * dbf.scan(RecordFilters.and(RecordFilters.notDeleted(),
+ *         RecordFilters.fieldEquals("STATUS", "A")));
+ * </pre>
+ */
+public final class RecordFilters {
+
+    private RecordFilters() {
+    }
+
+    /**
+     * Matches records which are not marked as deleted.
+     * @return the filter
+     */
+    public static RecordFilter notDeleted() {
+        return structure -> (data, offset) -> data[offset] != '*';
+    }
+
+    /**
+     * Matches records which are marked as deleted.
+     * @return the filter
+     */
+    public static RecordFilter deleted() {
+        return structure -> (data, offset) -> data[offset] == '*';
+    }
+
+    /**
+     * Matches records in which the given field equals the given value. As
+     * with auto trimmed values, leading and trailing spaces are ignored on
+     * both sides.
+     * @param fieldName the name of a character, numeric, date or logical
+     * field
+     * @param value the value to compare with
+     * @return the filter
+     */
+    public static RecordFilter fieldEquals(String fieldName, String value) {
+        return structure -> {
+            final DBFField field = requireField(structure, fieldName);
+            final byte[] valueBytes = structure.getTextCodec().encode(value.trim());
+            final int fieldOffset = structure.getFieldOffset(structure.getFieldIndex(fieldName));
+            final int fieldLength = field.getFieldLength();
+            return (data, offset) -> {
+                int start = offset + fieldOffset;
+                int end = start + fieldLength;
+                while (start < end && data[start] == ' ') {
+                    start++;
+                }
+                while (end > start && (data[end - 1] == ' ' || data[end - 1] == 0)) {
+                    end--;
+                }
+                return end - start == valueBytes.length
+                        && regionMatches(data, start, valueBytes);
+            };
+        };
+    }
+
+    /**
+     * Matches records in which the given field starts with the given prefix.
+     * Leading spaces in the field are ignored.
+     * @param fieldName the name of a character field
+     * @param prefix the prefix to look for
+     * @return the filter
+     */
+    public static RecordFilter fieldStartsWith(String fieldName, String prefix) {
+        return structure -> {
+            final DBFField field = requireField(structure, fieldName, DBFField.FieldType.C);
+            final byte[] prefixBytes = structure.getTextCodec().encode(prefix);
+            final int fieldOffset = structure.getFieldOffset(structure.getFieldIndex(fieldName));
+            final int fieldLength = field.getFieldLength();
+            return (data, offset) -> {
+                int start = offset + fieldOffset;
+                final int end = start + fieldLength;
+                while (start < end && data[start] == ' ') {
+                    start++;
+                }
+                return end - start >= prefixBytes.length
+                        && regionMatches(data, start, prefixBytes);
+            };
+        };
+    }
+
+    /**
+     * Matches records in which the given numeric field lies between the
+     * given bounds, inclusive. A blank value is treated as 0.
+     * @param fieldName the name of a numeric field
+     * @param min the lowest value to match
+     * @param max the highest value to match
+     * @return the filter
+     */
+    public static RecordFilter numberBetween(String fieldName, double min, double max) {
+        return structure -> {
+            final DBFField field = requireField(structure, fieldName,
+                    DBFField.FieldType.N, DBFField.FieldType.F);
+            final int fieldOffset = structure.getFieldOffset(structure.getFieldIndex(fieldName));
+            final int fieldLength = field.getFieldLength();
+            return (data, offset) -> {
+                double value = FieldDecoder.parseDouble(data, offset + fieldOffset, fieldLength);
+                return value >= min && value <= max;
+            };
+        };
+    }
+
+    /**
+     * Matches records in which the given date field lies between the given
+     * dates, inclusive. The dates are compared in their stored form, so
+     * nothing is parsed. Blank dates never match.
+     * @param fieldName the name of a date field
+     * @param from the earliest date to match
+     * @param to the latest date to match
+     * @return the filter
+     */
+    public static RecordFilter dateBetween(String fieldName, DBFDate from, DBFDate to) {
+        final byte[] fromBytes = String.format("%04d%02d%02d",
+                from.getYear(), from.getMonth(), from.getDay()).getBytes();
+        final byte[] toBytes = String.format("%04d%02d%02d",
+                to.getYear(), to.getMonth(), to.getDay()).getBytes();
+        return structure -> {
+            requireField(structure, fieldName, DBFField.FieldType.D);
+            final int fieldOffset = structure.getFieldOffset(structure.getFieldIndex(fieldName));
+            return (data, offset) -> {
+                final int start = offset + fieldOffset;
+                if (data[start] == ' ' || data[start] == 0) {
+                    return false;
+                }
+                return compare(data, start, fromBytes) >= 0
+                        && compare(data, start, toBytes) <= 0;
+            };
+        };
+    }
+
+    /**
+     * Matches records in which the given date field lies between the given
+     * dates, inclusive. Blank dates never match.
+     * @param fieldName the name of a date field
+     * @param from the earliest date to match
+     * @param to the latest date to match
+     * @return the filter
+     */
+    public static RecordFilter dateBetween(String fieldName, LocalDate from, LocalDate to) {
+        return dateBetween(fieldName, DBFDate.fromLocalDate(from), DBFDate.fromLocalDate(to));
+    }
+
+    /**
+     * Matches records which pass every one of the given filters. The
+     * filters are tested in order, stopping at the first which fails.
+     * @param filters the filters to combine
+     * @return the filter
+     */
+    public static RecordFilter and(RecordFilter... filters) {
+        return structure -> {
+            final RecordFilter.Matcher[] matchers = bindAll(structure, filters);
+            return (data, offset) -> {
+                for (RecordFilter.Matcher matcher : matchers) {
+                    if (!matcher.matches(data, offset)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        };
+    }
+
+    /**
+     * Matches records which pass any of the given filters. The filters are
+     * tested in order, stopping at the first which passes.
+     * @param filters the filters to combine
+     * @return the filter
+     */
+    public static RecordFilter or(RecordFilter... filters) {
+        return structure -> {
+            final RecordFilter.Matcher[] matchers = bindAll(structure, filters);
+            return (data, offset) -> {
+                for (RecordFilter.Matcher matcher : matchers) {
+                    if (matcher.matches(data, offset)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        };
+    }
+
+    /**
+     * Matches records which do not pass the given filter.
+     * @param filter the filter to negate
+     * @return the filter
+     */
+    public static RecordFilter not(RecordFilter filter) {
+        return structure -> {
+            final RecordFilter.Matcher matcher = filter.bind(structure);
+            return (data, offset) -> !matcher.matches(data, offset);
+        };
+    }
+
+    private static RecordFilter.Matcher[] bindAll(DBFStructure structure, RecordFilter[] filters) {
+        RecordFilter.Matcher[] matchers = new RecordFilter.Matcher[filters.length];
+        for (int count = 0; count < filters.length; count++) {
+            matchers[count] = filters[count].bind(structure);
+        }
+        return matchers;
+    }
+
+    /**
+     * Looks up a field, making sure it exists, is stored within the record,
+     * and, if any types are given, is one of them.
+     */
+    private static DBFField requireField(DBFStructure structure, String fieldName,
+            DBFField.FieldType... types) {
+        int fieldIndex = structure.getFieldIndex(fieldName);
+        if (fieldIndex < 0) {
+            throw new IllegalArgumentException("Field " + fieldName + " does not exist");
+        }
+        DBFField field = structure.getFields().get(fieldIndex);
+        if (field.getFieldType().isMemoField()) {
+            throw new IllegalArgumentException("Field " + fieldName + " is a memo field");
+        }
+        if (types.length == 0) {
+            return field;
+        }
+        for (DBFField.FieldType type : types) {
+            if (field.getFieldType() == type) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Field " + fieldName + " is of type "
+                + field.getFieldType());
+    }
+
+    private static boolean regionMatches(byte[] data, int start, byte[] value) {
+        for (int count = 0; count < value.length; count++) {
+            if (data[start + count] != value[count]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(byte[] data, int start, byte[] value) {
+        for (int count = 0; count < value.length; count++) {
+            int difference = (data[start + count] & 0xff) - (value[count] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over a range of records. Record offsets are simple
+ * arithmetic, so the range splits in half without any I/O, and each split
+ * reads its own records through its own {@link RecordCursor}, using
+ * positional reads which do not disturb one another.
+ */
+class RecordSpliterator implements Spliterator<RecordView> {
+
+    private final DBF dbf;
+    /** The smallest number of records worth splitting off. */
+    private final int minimumSplitSize;
+    private int firstRecord;
+    private final int lastRecord;
+    private RecordCursor cursor;
+
+    /**
+     * Creates a spliterator over a range of records.
+     * @param dbf The DBF to read from.
+     * @param firstRecord The number of the first record to visit.
+     * @param lastRecord The number of the last record to visit.
+     */
+    RecordSpliterator(DBF dbf, int firstRecord, int lastRecord) {
+        this.dbf = dbf;
+        this.firstRecord = firstRecord;
+        this.lastRecord = lastRecord;
+        this.minimumSplitSize = Math.max(1,
+                RecordCursor.CHUNK_SIZE / dbf.getStructure().getRecordLength());
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RecordView> action) {
+        if (cursor == null) {
+            cursor = new RecordCursor(dbf, firstRecord, lastRecord, null, null);
+        }
+        try {
+            if (cursor.next()) {
+                firstRecord++;
+                action.accept(cursor.record());
+                return true;
+            }
+            return false;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public Spliterator<RecordView> trySplit() {
+        // Once reading has started, the cursor owns the rest of the range.
+        if (cursor != null || estimateSize() < minimumSplitSize * 2L) {
+            return null;
+        }
+        int middle = firstRecord + (int) (estimateSize() / 2);
+        RecordSpliterator prefix = new RecordSpliterator(dbf, firstRecord, middle - 1);
+        firstRecord = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Math.max(0, lastRecord - firstRecord + 1);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+/**
+ * A read-only view of one record, as handed out by a {@link RecordCursor}.
+ * The view is a flyweight: the cursor points the same instance at each
+ * record in turn, so values must be copied out of it before the cursor is
+ * advanced. Field numbers start at 1. If the scan selected particular
+ * fields, only those fields may be read.
+ */
+public class RecordView {
+
+    private final DBF dbf;
+    private final DBFStructure structure;
+    /** The fields selected for the scan, or null for every field. */
+    private final Projection projection;
+    private byte[] data;
+    private int offset;
+    private int recordNumber;
+
+    RecordView(DBF dbf, Projection projection) {
+        this.dbf = dbf;
+        this.structure = dbf.getStructure();
+        this.projection = projection;
+    }
+
+    /**
+     * Points the view at a record.
+     * @param data The buffer holding the record.
+     * @param offset The offset of the record within <code>data</code>.
+     * @param recordNumber The number of the record.
+     */
+    void set(byte[] data, int offset, int recordNumber) {
+        this.data = data;
+        this.offset = offset;
+        this.recordNumber = recordNumber;
+    }
+
+    /**
+     * Gets the number of the record the view currently points to.
+     * @return The record number, starting at 1.
+     */
+    public int getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Gets whether the record is marked as deleted.
+     * @return <code>true</code> if the record is deleted.
+     */
+    public boolean isDeleted() {
+        return data[offset] == '*';
+    }
+
+    /**
+     * Gets the offset of a field within the data buffer.
+     * @throws IllegalArgumentException If the field is not part of the scan.
+     */
+    private int fieldOffset(int fieldNumber) {
+        if (projection != null) {
+            return offset + projection.getFieldOffset(fieldNumber);
+        }
+        return offset + structure.getFieldOffset(fieldNumber - 1);
+    }
+
+    /**
+     * Decodes the value of the given field. Memo values are read from the
+     * DBT when they are first requested, and a failure to read them is
+     * reported as an <code>UncheckedIOException</code>.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     * @throws IllegalArgumentException If the field is not part of the scan.
+     */
+    public DBFValue getValue(int fieldNumber) {
+        final int fieldOffset = fieldOffset(fieldNumber);
+        DBFField field = structure.getFields().get(fieldNumber - 1);
+        if (field.getFieldType().isMemoField()) {
+            return dbf.memoValue(field, data, fieldOffset);
+        }
+        return FieldDecoder.decode(field, data, fieldOffset, structure.getTextCodec());
+    }
+
+    /**
+     * Decodes the values of the fields selected for the scan, in the order
+     * they were selected, or of every field if no fields were selected.
+     * @return The fields' on disk values.
+     */
+    public DBFValue[] getValues() {
+        final int count = projection != null
+                ? projection.fieldNumbers.length : structure.getFields().size();
+        DBFValue[] values = new DBFValue[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = getValue(projection != null ? projection.fieldNumbers[i] : i + 1);
+        }
+        return values;
+    }
+
+    /**
+     * Decodes the value of the given field.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     */
+    public DBFValue getValue(String fieldName) {
+        return getValue(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets a string value for the given field.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     */
+    public String getString(int fieldNumber) {
+        return getValue(fieldNumber).getString();
+    }
+
+    /**
+     * Gets a string value for the given field.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     */
+    public String getString(String fieldName) {
+        return getString(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the integer portion of a numeric field without creating any
+     * objects. A blank value is returned as 0.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value, truncated to a long.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws ArithmeticException If the integer portion does not fit in a
+     * long.
+     */
+    public long getLong(int fieldNumber) {
+        final int fieldOffset = fieldOffset(fieldNumber);
+        DBFField field = dbf.requireFieldType(fieldNumber, "getLong()",
+                DBFField.FieldType.N, DBFField.FieldType.F);
+        return FieldDecoder.parseLong(data, fieldOffset, field.getFieldLength());
+    }
+
+    /**
+     * Gets the integer portion of a numeric field without creating any
+     * objects. A blank value is returned as 0.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value, truncated to a long.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws ArithmeticException If the integer portion does not fit in a
+     * long.
+     */
+    public long getLong(String fieldName) {
+        return getLong(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the integer portion of a numeric field without creating any
+     * objects. A blank value is returned as 0.
+     * @param fieldNumber The number of the field.
+     * @return The integer portion of the field's on disk value.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws ArithmeticException If the integer portion does not fit in an
+     * int.
+     */
+    public int getInt(int fieldNumber) {
+        return Math.toIntExact(getLong(fieldNumber));
+    }
+
+    /**
+     * Gets the integer portion of a numeric field without creating any
+     * objects. A blank value is returned as 0.
+     * @param fieldName The name of the field.
+     * @return The integer portion of the field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not numeric.
+     * @throws ArithmeticException If the integer portion does not fit in an
+     * int.
+     */
+    public int getInt(String fieldName) {
+        return getInt(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a numeric field as a double without creating any
+     * objects. A blank value is returned as 0.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     * @throws IllegalStateException If the field is not numeric.
+     */
+    public double getDouble(int fieldNumber) {
+        final int fieldOffset = fieldOffset(fieldNumber);
+        DBFField field = dbf.requireFieldType(fieldNumber, "getDouble()",
+                DBFField.FieldType.N, DBFField.FieldType.F);
+        return FieldDecoder.parseDouble(data, fieldOffset, field.getFieldLength());
+    }
+
+    /**
+     * Gets the value of a numeric field as a double without creating any
+     * objects. A blank value is returned as 0.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not numeric.
+     */
+    public double getDouble(String fieldName) {
+        return getDouble(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a date field.
+     * @param fieldNumber The number of the field.
+     * @return The field's on disk value.
+     */
+    public DBFDate getDate(int fieldNumber) {
+        return getValue(fieldNumber).getDate();
+    }
+
+    /**
+     * Gets the value of a date field.
+     * @param fieldName The name of the field.
+     * @return The field's on disk value.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     */
+    public DBFDate getDate(String fieldName) {
+        return getDate(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a date field as the number of days since 1970-01-01,
+     * without creating any objects.
+     * @param fieldNumber The number of the field.
+     * @return The epoch day, or {@link DBFDate#BLANK_EPOCH_DAY} if the date
+     * is blank.
+     * @throws IllegalStateException If the field is not a date field.
+     */
+    public int getEpochDay(int fieldNumber) {
+        final int fieldOffset = fieldOffset(fieldNumber);
+        dbf.requireFieldType(fieldNumber, "getEpochDay()", DBFField.FieldType.D);
+        return FieldDecoder.parseEpochDay(data, fieldOffset);
+    }
+
+    /**
+     * Gets the value of a date field as the number of days since 1970-01-01,
+     * without creating any objects.
+     * @param fieldName The name of the field.
+     * @return The epoch day, or {@link DBFDate#BLANK_EPOCH_DAY} if the date
+     * is blank.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a date field.
+     */
+    public int getEpochDay(String fieldName) {
+        return getEpochDay(dbf.requireFieldNumber(fieldName));
+    }
+
+    /**
+     * Gets the value of a logical field without creating any objects.
+     * @param fieldNumber The number of the field.
+     * @return <code>true</code> if the field holds Y or T.
+     * @throws IllegalStateException If the field is not a logical field.
+     */
+    public boolean isTrue(int fieldNumber) {
+        final int fieldOffset = fieldOffset(fieldNumber);
+        dbf.requireFieldType(fieldNumber, "isTrue()", DBFField.FieldType.L);
+        return FieldDecoder.parseLogical(data[fieldOffset]);
+    }
+
+    /**
+     * Gets the value of a logical field without creating any objects.
+     * @param fieldName The name of the field.
+     * @return <code>true</code> if the field holds Y or T.
+     * @throws IllegalArgumentException If a bad field name is specified.
+     * @throws IllegalStateException If the field is not a logical field.
+     */
+    public boolean isTrue(String fieldName) {
+        return isTrue(dbf.requireFieldNumber(fieldName));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts character data between a table's character set and strings.
+ * ISO-8859-1 is decoded by the JDK's own Latin-1 path, which needs no
+ * decoder and produces compact strings. Other single byte character sets
+ * are decoded through a table of all 256 characters, built once per
+ * character set. Multi-byte character sets fall back to the JDK decoder.
+ */
+final class TextCodec {
+
+    private static final ConcurrentMap<Charset, TextCodec> CODECS = new ConcurrentHashMap<>();
+
+    final Charset charset;
+    /** Whether the character set is ISO-8859-1. */
+    private final boolean latin1;
+    /** The character of each byte for single byte character sets, or null. */
+    private final char[] decodeTable;
+
+    private TextCodec(Charset charset) {
+        this.charset = charset;
+        this.latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        this.decodeTable = latin1 ? null : buildDecodeTable(charset);
+    }
+
+    /**
+     * Gets the codec for a character set, building it the first time.
+     * @param charset the character set
+     * @return the codec
+     */
+    static TextCodec forCharset(Charset charset) {
+        return CODECS.computeIfAbsent(charset, TextCodec::new);
+    }
+
+    /**
+     * Builds the decode table of a single byte character set.
+     * @return the table, or <code>null</code> if the character set is not a
+     * single byte character set
+     */
+    private static char[] buildDecodeTable(Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            return null;
+        }
+        char[] table = new char[256];
+        byte[] single = new byte[1];
+        for (int count = 0; count < table.length; count++) {
+            single[0] = (byte) count;
+            String decoded = new String(single, charset);
+            if (decoded.length() != 1) {
+                return null;
+            }
+            table[count] = decoded.charAt(0);
+        }
+        return table;
+    }
+
+    /**
+     * Decodes a run of bytes.
+     * @param data the bytes
+     * @param offset the offset of the first byte to decode
+     * @param length the number of bytes to decode
+     * @return the decoded string
+     */
+    String decode(byte[] data, int offset, int length) {
+        if (latin1) {
+            return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+        } else if (decodeTable != null) {
+            char[] chars = new char[length];
+            for (int count = 0; count < length; count++) {
+                chars[count] = decodeTable[data[offset + count] & 0xff];
+            }
+            return new String(chars);
+        }
+        return new String(data, offset, length, charset);
+    }
+
+    /**
+     * Decodes a run of bytes, leaving out leading and trailing spaces and
+     * control characters. The bytes are trimmed before they are decoded, so
+     * no untrimmed string is built along the way.
+     * @param data the bytes
+     * @param offset the offset of the first byte to decode
+     * @param length the number of bytes to decode
+     * @return the decoded, trimmed string
+     */
+    String decodeTrimmed(byte[] data, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (data[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (data[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return start == end ? "" : decode(data, start, end - start);
+    }
+
+    /**
+     * Encodes a string.
+     * @param value the string
+     * @return the encoded bytes
+     */
+    byte[] encode(String value) {
+        return value.getBytes(charset);
+    }
+}
@@ -65,6 +65,61 @@ public interface DBFIndex {
      */
     void update(com.idataconnect.jdbfdriver.DBF dbf, java.util.Map<String, Object> oldKeys) throws IOException;
 
+    /**
+     * Begins a bulk load. Until {@link #endBulkLoad} is called, keys which
+     * are inserted may be collected in memory instead of being added to the
+     * index one at a time, so that the index can be built in a single pass
+     * at the end. The index must not be searched or traversed during a bulk
+     * load. The default implementation does nothing, and keys keep being
+     * inserted one at a time.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    default void beginBulkLoad() throws IOException {
+    }
+
+    /**
+     * Ends a bulk load, adding every key collected since
+     * {@link #beginBulkLoad} to the index. If this fails, the bulk load stays
+     * in progress with the keys which were not added yet, and calling this
+     * method again adds them. The default implementation does nothing.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    default void endBulkLoad() throws IOException {
+    }
+
+    /**
+     * Makes the index take part in a transaction, reporting every write to
+     * the given journal before it is made, or stops it from taking part if
+     * the journal is <code>null</code>. The default implementation does
+     * nothing, so the index is not rolled back with the table.
+     *
+     * @param journal the journal of the transaction, or <code>null</code>
+     * @throws IOException if an I/O error occurs
+     */
+    default void setJournal(com.idataconnect.jdbfdriver.Journal journal) throws IOException {
+    }
+
+    /**
+     * Re-reads the structure of the index, discarding anything cached, after
+     * the file was changed underneath it, such as by a rollback. The default
+     * implementation does nothing.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    default void refresh() throws IOException {
+    }
+
+    /**
+     * Forces any changes to the index to disk. The default implementation
+     * does nothing.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    default void sync() throws IOException {
+    }
+
     /**
      * Closes the index file and releases any resources.
      *
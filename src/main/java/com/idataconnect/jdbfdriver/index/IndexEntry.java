@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2009-2024, i Data Connect!
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of i Data Connect! nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDER AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.idataconnect.jdbfdriver.index;
+
+import java.util.Comparator;
+
+/**
+ * An encoded key and the record it points to, held in memory while an index
+ * is bulk loaded.
+ */
+final class IndexEntry {
+
+    /**
+     * Orders entries by key, comparing bytes as unsigned, and then by record
+     * number, which is the order the index holds them in.
+     */
+    static final Comparator<IndexEntry> ORDER = (a, b) -> {
+        int result = compareKeys(a.key, b.key);
+        return result != 0 ? result : Integer.compare(a.recordNumber, b.recordNumber);
+    };
+
+    final byte[] key;
+    final int recordNumber;
+
+    IndexEntry(byte[] key, int recordNumber) {
+        this.key = key;
+        this.recordNumber = recordNumber;
+    }
+
+    /**
+     * Compares two keys lexicographically (unsigned bytes).
+     */
+    static int compareKeys(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return a.length - b.length;
+    }
+}
@@ -32,6 +32,7 @@ package com.idataconnect.jdbfdriver.index;
 
 import com.idataconnect.jdbfdriver.DBF;
 import com.idataconnect.jdbfdriver.DBFDate;
+import com.idataconnect.jdbfdriver.Journal;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -44,9 +45,13 @@ import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.locks.ReentrantLock;
@@ -81,11 +86,16 @@ public class MDX implements DBFIndex {
 
     protected int blockNumber;
     protected int keyIndex; // key within node
+    /** The journal of the current transaction, or null if there is none. */
+    private Journal.Target journal;
     protected Tag tag;
 
     /** Stack of (blockNumber, keyIndex) pairs for multi-level tree traversal. */
     private final Deque<int[]> traversalStack = new ArrayDeque<>();
 
+    /** Keys inserted during a bulk load, by tag, or null if not bulk loading. */
+    private Map<Tag, List<IndexEntry>> bulkEntries;
+
     protected MDX(File mdxFile, RandomAccessFile randomAccessFile, ReentrantLock threadLock) {
         this.mdxFile = mdxFile;
         this.randomAccessFile = randomAccessFile;
@@ -401,17 +411,11 @@ public class MDX implements DBFIndex {
      * @throws IOException if an I/O error occurs
      */
     protected void readStructure() throws IOException {
-        FileChannel channel = randomAccessFile.getChannel();
 
         // MDX header
-        channel.position(0);
         buf.position(0);
         buf.limit(544);
-        while (buf.hasRemaining()) {
-            if (channel.read(buf) == -1) {
-                throw new IOException("EOF while reading MDX structure");
-            }
-        }
+        readFully(buf, 0, "EOF while reading MDX structure");
         buf.position(0);
 
         byte version = buf.get();
@@ -467,14 +471,10 @@ public class MDX implements DBFIndex {
         for (int tagIndex = 0; tagIndex < tags.length; tagIndex++) {
             tags[tagIndex] = new Tag();
 
-            channel.position(544 + tagIndex * tagLength);
             buf.position(0);
             buf.limit(21);
-            while (buf.hasRemaining()) {
-                if (channel.read(buf) == -1) {
-                    throw new IOException("EOF while reading MDX [" + mdxFile.getName() + "] tag " + tagIndex);
-                }
-            }
+            readFully(buf, 544 + tagIndex * tagLength,
+                    "EOF while reading MDX [" + mdxFile.getName() + "] tag " + tagIndex);
             buf.position(0);
             tags[tagIndex].setHeaderBlock((int) (buf.getInt() & 0xffffffffL));
             for (i = 0; i < 10; i++) {
@@ -513,14 +513,10 @@ public class MDX implements DBFIndex {
             }
 
             // Tag header
-            channel.position(tags[tagIndex].getHeaderBlock() * BLOCK_SIZE);
             buf.position(0);
             buf.limit(BLOCK_SIZE);
-            while (buf.hasRemaining()) {
-                if (channel.read(buf) == -1) {
-                    throw new IOException("EOF while reading tag headers");
-                }
-            }
+            readFully(buf, (long) tags[tagIndex].getHeaderBlock() * BLOCK_SIZE,
+                    "EOF while reading tag headers");
             buf.position(0);
 
             tags[tagIndex].setRootBlock((int) (buf.getInt() & 0xffffffffL));
@@ -543,7 +539,9 @@ public class MDX implements DBFIndex {
             if ((buf.get() != 0) != tags[tagIndex].isUnique()) {
                 throw new IOException("Unique flag in header != unique flag in tag descriptor: Key Format=" + keyFormat);
             }
-            tags[tagIndex].levels = buf.get() & 0xff;
+            // The number of levels is kept in a reserved byte, as written by
+            // writeTagHeader. Files which don't use it have a single level.
+            tags[tagIndex].levels = Math.max(1, buf.get(22) & 0xff);
 
             // Read expression starting at byte 24
             buf.position(24);
@@ -619,7 +617,14 @@ public class MDX implements DBFIndex {
                 tagName, mdxFile.getName()));
     }
 
+    /**
+     * Gets the number of bytes between the entries of a block of the given
+     * tag, which is the key item length stored in the tag header.
+     */
     private static int keyRecordSize(Tag tag) {
+        if (tag.getKeyItemLength() > 0) {
+            return tag.getKeyItemLength();
+        }
         return (int) Math.ceil(tag.getKeyLength() / 4f) * 4 + 4;
     }
 
@@ -817,15 +822,9 @@ public class MDX implements DBFIndex {
         if (blockNumber <= 0) {
             throw new IllegalStateException("Invalid block number: " + blockNumber);
         }
-        FileChannel channel = randomAccessFile.getChannel();
         buf.position(0);
         buf.limit(nodeSize);
-        channel.position(BLOCK_SIZE * (long) blockNumber);
-        while (buf.hasRemaining()) {
-            if (channel.read(buf) == -1) {
-                throw new IOException("EOF while reading block " + blockNumber);
-            }
-        }
+        readFully(buf, BLOCK_SIZE * (long) blockNumber, "EOF while reading block " + blockNumber);
     }
 
     /**
@@ -857,6 +856,29 @@ public class MDX implements DBFIndex {
         }
     }
 
+    @Override
+    public void setJournal(Journal journal) throws IOException {
+        this.journal = journal == null ? null
+                : journal.register(mdxFile, randomAccessFile.getChannel());
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        final Tag current = tag;
+        this.blockNumber = 0;
+        this.keyIndex = 0;
+        traversalStack.clear();
+        readStructure();
+        if (current != null) {
+            setTag(current.getName());
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        randomAccessFile.getChannel().force(false);
+    }
+
     public void close() throws IOException {
         randomAccessFile.close();
     }
@@ -1214,7 +1236,9 @@ public class MDX implements DBFIndex {
                 t.setKeyLength(Math.max(1, Math.min(240, expression.length())));
                 break;
         }
-        int krs = keyRecordSize(t);
+        // Each entry holds [childPtr:4][recNum:4] and the padded key, so that
+        // the key does not run into the child pointer of the next entry.
+        int krs = (int) Math.ceil(t.getKeyLength() / 4f) * 4 + 8;
         // keysPerBlock: the node holds [count:4][leftPtr:4] + keysPerBlock * krs <= nodeSize
         t.setKeysPerBlock((nodeSize - 8) / krs);
         t.setKeyItemLength(krs);
@@ -1258,7 +1282,25 @@ public class MDX implements DBFIndex {
             throw new IllegalStateException("No tag is set");
         }
         byte[] encodedKey = encodeKey(key, tag);
+        if (bulkEntries != null) {
+            bulkEntries.computeIfAbsent(tag, t -> new ArrayList<>())
+                    .add(new IndexEntry(encodedKey, recordNumber));
+            return;
+        }
+        insertEncoded(encodedKey, recordNumber);
+    }
+
+    /**
+     * Inserts an encoded key into the B-tree of the currently active tag.
+     */
+    private void insertEncoded(byte[] encodedKey, int recordNumber) throws IOException {
+        final int blocksBefore = numberOfBlocks;
         SplitResult split = insertIntoBlock(tag.getRootBlock(), encodedKey, recordNumber, tag.levels);
+        if (split == null && numberOfBlocks != blocksBefore) {
+            // A block was split below the root. The new block must be counted
+            // in the header, or it cannot be read once the file is reopened.
+            writeHeader();
+        }
         if (split != null) {
             // Root was split — create a new root with two entries
             int newRoot = allocateBlock();
@@ -1301,9 +1343,149 @@ public class MDX implements DBFIndex {
             return;
         }
         byte[] encodedKey = encodeKey(key, tag);
+        if (bulkEntries != null) {
+            // The key is most likely one inserted since the bulk load began,
+            // and then most likely a recent one.
+            List<IndexEntry> entries = bulkEntries.get(tag);
+            if (entries != null) {
+                for (int i = entries.size() - 1; i >= 0; i--) {
+                    IndexEntry entry = entries.get(i);
+                    if (entry.recordNumber == recordNumber
+                            && Arrays.equals(entry.key, encodedKey)) {
+                        entries.remove(i);
+                        return;
+                    }
+                }
+            }
+        }
         deleteFromBlock(tag.getRootBlock(), encodedKey, recordNumber, tag.levels);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys inserted into any tag are collected until the bulk load ends.
+     * </p>
+     */
+    @Override
+    public void beginBulkLoad() {
+        if (bulkEntries == null) {
+            bulkEntries = new HashMap<>();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The collected keys of each tag are sorted. If the tag was empty, its
+     * B-tree is then built from the bottom up, writing each block once, and
+     * the tag is switched to it by a single write of its header. Otherwise,
+     * the keys are inserted in order. The keys of each tag are dropped once
+     * they have all been added.
+     * </p>
+     */
+    @Override
+    public void endBulkLoad() throws IOException {
+        if (bulkEntries == null) {
+            return;
+        }
+
+        final Tag originalTag = this.tag;
+        try {
+            for (Tag t : tags) {
+                List<IndexEntry> entries = bulkEntries.get(t);
+                if (entries == null || entries.isEmpty()) {
+                    continue;
+                }
+                entries.sort(IndexEntry.ORDER);
+                this.tag = t;
+                this.blockNumber = 0; // Re-read the root
+                gotoBlock(t.getRootBlock());
+                if (t.levels <= 1 && keysInBlock() == 0) {
+                    buildTag(t, entries);
+                } else {
+                    int inserted = 0;
+                    try {
+                        for (IndexEntry entry : entries) {
+                            insertEncoded(entry.key, entry.recordNumber);
+                            inserted++;
+                        }
+                    } finally {
+                        entries.subList(0, inserted).clear();
+                    }
+                }
+                bulkEntries.remove(t);
+            }
+            bulkEntries = null;
+        } finally {
+            this.tag = originalTag;
+        }
+    }
+
+    /**
+     * Builds the B-tree of an empty tag from the bottom up, from the given
+     * sorted entries. Each leaf and internal block is filled, and written
+     * exactly once, into new blocks. The tag keeps its empty root until its
+     * header is written at the end, so a failed build leaves it empty.
+     */
+    private void buildTag(Tag t, List<IndexEntry> entries) throws IOException {
+        final int krs = keyRecordSize(t);
+        final int keysPerBlock = t.getKeysPerBlock();
+
+        // Leaves
+        List<Integer> blocks = new ArrayList<>();
+        List<byte[]> maxKeys = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += keysPerBlock) {
+            final int count = Math.min(keysPerBlock, entries.size() - start);
+            final int blockNum = reserveBlock();
+            Arrays.fill(buf.array(), 0, nodeSize, (byte) 0);
+            for (int i = 0; i < count; i++) {
+                IndexEntry entry = entries.get(start + i);
+                buf.putInt(4 + i * krs, 0);
+                buf.putInt(8 + i * krs, entry.recordNumber);
+                buf.position(12 + i * krs);
+                buf.put(entry.key);
+            }
+            buf.putInt(0, count);
+            writeBlock(blockNum);
+            blocks.add(blockNum);
+            maxKeys.add(entries.get(start + count - 1).key);
+        }
+
+        // Internal levels, each entry holding the max key of its child
+        int levels = 1;
+        while (blocks.size() > 1) {
+            List<Integer> parentBlocks = new ArrayList<>();
+            List<byte[]> parentMaxKeys = new ArrayList<>();
+            for (int start = 0; start < blocks.size(); start += keysPerBlock) {
+                final int count = Math.min(keysPerBlock, blocks.size() - start);
+                final int blockNum = reserveBlock();
+                Arrays.fill(buf.array(), 0, nodeSize, (byte) 0);
+                for (int i = 0; i < count; i++) {
+                    buf.putInt(4 + i * krs, blocks.get(start + i));
+                    buf.putInt(8 + i * krs, 0);
+                    buf.position(12 + i * krs);
+                    buf.put(maxKeys.get(start + i));
+                }
+                buf.putInt(0, count);
+                writeBlock(blockNum);
+                parentBlocks.add(blockNum);
+                parentMaxKeys.add(maxKeys.get(start + count - 1));
+            }
+            blocks = parentBlocks;
+            maxKeys = parentMaxKeys;
+            levels++;
+        }
+
+        // The buffer no longer holds the block it was read from. The new
+        // blocks are counted before the tag is pointed at them.
+        this.blockNumber = 0;
+        writeHeader();
+        t.setRootBlock(blocks.get(0));
+        t.levels = levels;
+        writeTagHeader(t, null);
+    }
+
     /**
      * Recursively inserts a key into the B-tree rooted at {@code blockNum}.
      *
@@ -1358,8 +1540,7 @@ public class MDX implements DBFIndex {
                 // If we inserted into the last child and the new key is larger
                 // than the current max, update the key in the parent
                 if (pos == count && compareKeys(key, readRawKey(count - 1)) > 0) {
-                    buf.position(12 + (count - 1) * krs);
-                    buf.put(key, 0, key.length);
+                    putKey(count - 1, key, krs);
                     writeBlock(blockNum);
                 }
                 return null;
@@ -1367,8 +1548,7 @@ public class MDX implements DBFIndex {
 
             // Child was split — update the existing entry's key to the promoted key
             // (max of left child) and insert a new entry for the right child
-            buf.position(12 + childIdx * krs);
-            buf.put(childSplit.promotedKey, 0, childSplit.promotedKey.length);
+            putKey(childIdx, childSplit.promotedKey, krs);
 
             // Insert new entry for right child AFTER childIdx
             int insertPos = childIdx + 1;
@@ -1407,8 +1587,29 @@ public class MDX implements DBFIndex {
         // Write the new entry
         buf.putInt(4 + pos * krs, childPtr);
         buf.putInt(8 + pos * krs, recNum);
-        buf.position(12 + pos * krs);
+        putKey(pos, key, krs);
+    }
+
+    /**
+     * Writes the key data for slot {@code i} in the current buffer. In tags
+     * whose key item length leaves no room for the child pointer, as written
+     * by dBase, the tail of a key shares its bytes with the child pointer of
+     * the following slot, so that pointer is preserved rather than
+     * overwritten by the key.
+     *
+     * @param i the slot to write the key of
+     * @param key the key data bytes
+     * @param krs the key record size (stride)
+     */
+    private void putKey(int i, byte[] key, int krs) {
+        final int nextChild = 4 + (i + 1) * krs;
+        final boolean hasNext = nextChild + 4 <= buf.capacity();
+        final int savedChild = hasNext ? buf.getInt(nextChild) : 0;
+        buf.position(12 + i * krs);
         buf.put(key, 0, key.length);
+        if (hasNext) {
+            buf.putInt(nextChild, savedChild);
+        }
     }
 
     /**
@@ -1635,14 +1836,23 @@ public class MDX implements DBFIndex {
      * @throws IOException if an I/O error occurs
      */
     private int allocateBlock() throws IOException {
+        int blockNum = reserveBlock();
+        // Zero-fill the new block on disk
+        byte[] zeros = new byte[nodeSize];
+        writeFully(ByteBuffer.wrap(zeros), (long) BLOCK_SIZE * blockNum);
+        return blockNum;
+    }
+
+    /**
+     * Takes the next available block, without writing to it. The caller
+     * must write the whole block.
+     *
+     * @return the block number of the reserved block
+     */
+    private int reserveBlock() {
         int blockNum = availableBlock;
         availableBlock += blockSizeMultiplier;
         numberOfBlocks = availableBlock;
-        // Zero-fill the new block on disk
-        FileChannel ch = randomAccessFile.getChannel();
-        byte[] zeros = new byte[nodeSize];
-        ch.position((long) BLOCK_SIZE * blockNum);
-        ch.write(ByteBuffer.wrap(zeros));
         return blockNum;
     }
 
@@ -1653,12 +1863,37 @@ public class MDX implements DBFIndex {
      * @throws IOException if an I/O error occurs
      */
     private void writeBlock(int blockNum) throws IOException {
-        FileChannel ch = randomAccessFile.getChannel();
         buf.position(0);
         buf.limit(nodeSize);
-        ch.position((long) BLOCK_SIZE * blockNum);
-        while (buf.hasRemaining()) {
-            ch.write(buf);
+        writeFully(buf, (long) BLOCK_SIZE * blockNum);
+    }
+
+    /**
+     * Reads from the given position of the file until the buffer is full,
+     * leaving the position of the channel alone.
+     */
+    private void readFully(ByteBuffer target, long position, String eofMessage) throws IOException {
+        FileChannel ch = randomAccessFile.getChannel();
+        while (target.hasRemaining()) {
+            int numRead = ch.read(target, position);
+            if (numRead == -1) {
+                throw new IOException(eofMessage);
+            }
+            position += numRead;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer at the given position of the
+     * file, leaving the position of the channel alone.
+     */
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        if (journal != null) {
+            journal.beforeWrite(position, source.remaining());
+        }
+        FileChannel ch = randomAccessFile.getChannel();
+        while (source.hasRemaining()) {
+            position += ch.write(source, position);
         }
     }
 
@@ -1672,8 +1907,7 @@ public class MDX implements DBFIndex {
         ByteBuffer hb = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
         // If we need to preserve an existing expression, read it first
         if (expression == null) {
-            ch.position((long) BLOCK_SIZE * t.getHeaderBlock());
-            ch.read(hb);
+            ch.read(hb, (long) BLOCK_SIZE * t.getHeaderBlock());
             hb.flip();
             // Overwrite only the fields we manage
             hb.putInt(0, t.getRootBlock());
@@ -1703,10 +1937,7 @@ public class MDX implements DBFIndex {
         }
         hb.position(0);
         hb.limit(BLOCK_SIZE);
-        ch.position((long) BLOCK_SIZE * t.getHeaderBlock());
-        while (hb.hasRemaining()) {
-            ch.write(hb);
-        }
+        writeFully(hb, (long) BLOCK_SIZE * t.getHeaderBlock());
     }
 
     /**
@@ -1715,7 +1946,6 @@ public class MDX implements DBFIndex {
      * @throws IOException if an I/O error occurs
      */
     void writeHeader() throws IOException {
-        FileChannel ch = randomAccessFile.getChannel();
         // Header is 544 bytes + tagsInUse * tagLength bytes
         int headerSize = 544 + keysInTag * tagLength;
         ByteBuffer hb = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
@@ -1774,10 +2004,7 @@ public class MDX implements DBFIndex {
         }
 
         hb.position(0);
-        ch.position(0);
-        while (hb.hasRemaining()) {
-            ch.write(hb);
-        }
+        writeFully(hb, 0);
     }
 
     /** Holds the result of a B-tree node split. */
@@ -32,6 +32,7 @@ package com.idataconnect.jdbfdriver.index;
 
 import com.idataconnect.jdbfdriver.DBF;
 import com.idataconnect.jdbfdriver.DBFDate;
+import com.idataconnect.jdbfdriver.Journal;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -41,7 +42,9 @@ import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -68,6 +71,10 @@ public class NDX implements DBFIndex {
     private int pageNumber;
     private int keyIndex;
     private Charset charset;
+    /** Keys inserted during a bulk load, or null if not bulk loading. */
+    private List<IndexEntry> bulkEntries;
+    /** The journal of the current transaction, or null if there is none. */
+    private Journal.Target journal;
 
     private NDX(File ndxFile, RandomAccessFile randomAccessFile, ReentrantLock threadLock) {
         this.ndxFile = ndxFile;
@@ -90,15 +97,9 @@ public class NDX implements DBFIndex {
     }
 
     protected void readStructure() throws IOException {
-        FileChannel channel = randomAccessFile.getChannel();
-        channel.position(0);
         buf.position(0);
         buf.limit(PAGE_SIZE);
-        while (buf.hasRemaining()) {
-            if (channel.read(buf) == -1) {
-                throw new IOException("EOF encountered while reading NDX structure");
-            }
-        }
+        readFully(buf, 0, "EOF encountered while reading NDX structure");
 
         buf.position(0);
         startPage = buf.getInt();
@@ -152,13 +153,9 @@ public class NDX implements DBFIndex {
         if (pageNumber <= 0) {
             throw new IllegalStateException("Invalid page number: " + pageNumber);
         }
-        FileChannel channel = randomAccessFile.getChannel();
         buf.position(0);
         buf.limit(PAGE_SIZE);
-        channel.position(PAGE_SIZE * (long) pageNumber);
-        while (buf.hasRemaining()) {
-            channel.read(buf);
-        }
+        readFully(buf, PAGE_SIZE * (long) pageNumber, "EOF encountered while reading page " + pageNumber);
     }
 
     /**
@@ -283,6 +280,24 @@ public class NDX implements DBFIndex {
         }
     }
 
+    @Override
+    public void setJournal(Journal journal) throws IOException {
+        this.journal = journal == null ? null
+                : journal.register(ndxFile, randomAccessFile.getChannel());
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        this.pageNumber = 0;
+        this.keyIndex = 0;
+        readStructure();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        randomAccessFile.getChannel().force(false);
+    }
+
     public void close() throws IOException {
         randomAccessFile.close();
     }
@@ -445,6 +460,17 @@ public class NDX implements DBFIndex {
     @Override
     public void insert(Object key, int recordNumber) throws IOException {
         byte[] encodedKey = encodeKey(key);
+        if (bulkEntries != null) {
+            bulkEntries.add(new IndexEntry(encodedKey, recordNumber));
+            return;
+        }
+        insertEncoded(encodedKey, recordNumber);
+    }
+
+    /**
+     * Inserts an encoded key into the B-tree.
+     */
+    private void insertEncoded(byte[] encodedKey, int recordNumber) throws IOException {
         SplitResult split = insertIntoPage(startPage, encodedKey, recordNumber);
         if (split != null) {
             // Root page was split — create a new root
@@ -479,9 +505,58 @@ public class NDX implements DBFIndex {
     @Override
     public void delete(Object key, int recordNumber) throws IOException {
         byte[] encodedKey = encodeKey(key);
+        if (bulkEntries != null) {
+            // The key is most likely a recent one inserted since the bulk
+            // load began.
+            for (int i = bulkEntries.size() - 1; i >= 0; i--) {
+                IndexEntry entry = bulkEntries.get(i);
+                if (entry.recordNumber == recordNumber && Arrays.equals(entry.key, encodedKey)) {
+                    bulkEntries.remove(i);
+                    return;
+                }
+            }
+        }
         deleteFromPage(startPage, encodedKey, recordNumber);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Inserted keys are collected until the bulk load ends.
+     * </p>
+     */
+    @Override
+    public void beginBulkLoad() {
+        if (bulkEntries == null) {
+            bulkEntries = new ArrayList<>();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The collected keys are sorted and then inserted in order, so each page
+     * is filled before moving on to the next.
+     * </p>
+     */
+    @Override
+    public void endBulkLoad() throws IOException {
+        if (bulkEntries == null) {
+            return;
+        }
+        bulkEntries.sort(IndexEntry.ORDER);
+        int inserted = 0;
+        try {
+            for (IndexEntry entry : bulkEntries) {
+                insertEncoded(entry.key, entry.recordNumber);
+                inserted++;
+            }
+        } finally {
+            bulkEntries.subList(0, inserted).clear();
+        }
+        bulkEntries = null;
+    }
+
     /**
      * Recursively inserts a key into the B-tree rooted at {@code pageNum}.
      *
@@ -756,12 +831,37 @@ public class NDX implements DBFIndex {
      * @throws IOException if an I/O error occurs
      */
     private void writePage(int pageNum) throws IOException {
-        FileChannel channel = randomAccessFile.getChannel();
         buf.position(0);
         buf.limit(PAGE_SIZE);
-        channel.position(PAGE_SIZE * (long) pageNum);
-        while (buf.hasRemaining()) {
-            channel.write(buf);
+        writeFully(buf, PAGE_SIZE * (long) pageNum);
+    }
+
+    /**
+     * Reads from the given position of the file until the buffer is full,
+     * leaving the position of the channel alone.
+     */
+    private void readFully(ByteBuffer target, long position, String eofMessage) throws IOException {
+        FileChannel channel = randomAccessFile.getChannel();
+        while (target.hasRemaining()) {
+            int numRead = channel.read(target, position);
+            if (numRead == -1) {
+                throw new IOException(eofMessage);
+            }
+            position += numRead;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer at the given position of the
+     * file, leaving the position of the channel alone.
+     */
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        if (journal != null) {
+            journal.beforeWrite(position, source.remaining());
+        }
+        FileChannel channel = randomAccessFile.getChannel();
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
         }
     }
 
@@ -771,7 +871,6 @@ public class NDX implements DBFIndex {
      * @throws IOException if an I/O error occurs
      */
     private void writeHeader() throws IOException {
-        FileChannel channel = randomAccessFile.getChannel();
         ByteBuffer hb = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
         hb.putInt(0, startPage);
         hb.putInt(4, totalPages);
@@ -787,10 +886,7 @@ public class NDX implements DBFIndex {
             hb.put(24 + i, kBytes[i]);
         }
         hb.position(0);
-        channel.position(0);
-        while (hb.hasRemaining()) {
-            channel.write(hb);
-        }
+        writeFully(hb, 0);
     }
 
     /** Holds the result of a page split. */
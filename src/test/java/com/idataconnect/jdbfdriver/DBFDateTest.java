@@ -2,6 +2,7 @@ package com.idataconnect.jdbfdriver;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.LocalDate;
 import org.junit.jupiter.api.Test;
 
 public class DBFDateTest {
@@ -56,4 +57,34 @@ public class DBFDateTest {
         result = d1.compareTo(new DBFDate(5, 18, 2011));
         assertEquals(expResult, result);
     }
+
+    @Test
+    public void testEpochDay() {
+        System.out.println("epochDay");
+        assertEquals(0, new DBFDate(1, 1, 1970).getEpochDay());
+        assertEquals(DBFDate.BLANK_EPOCH_DAY, new DBFDate().getEpochDay());
+        assertTrue(DBFDate.fromEpochDay(DBFDate.BLANK_EPOCH_DAY).isBlank());
+
+        LocalDate date = LocalDate.of(1600, 1, 1);
+        while (date.getYear() < 2400) {
+            DBFDate dbfDate = DBFDate.fromLocalDate(date);
+            assertEquals(date.toEpochDay(), dbfDate.getEpochDay());
+            assertEquals(dbfDate, DBFDate.fromEpochDay((int) date.toEpochDay()));
+            assertEquals(date, DBFDate.fromEpochDay((int) date.toEpochDay()).toLocalDate());
+            date = date.plusDays(13);
+        }
+    }
+
+    @Test
+    public void testLocalDate() {
+        System.out.println("localDate");
+        DBFDate instance = DBFDate.fromLocalDate(LocalDate.of(2012, 5, 18));
+        assertEquals(5, instance.getMonth());
+        assertEquals(18, instance.getDay());
+        assertEquals(2012, instance.getYear());
+        assertEquals(LocalDate.of(2012, 5, 18), instance.toLocalDate());
+        assertNull(new DBFDate().toLocalDate());
+        assertTrue(DBFDate.fromLocalDate(null).isBlank());
+        assertTrue(new DBFDate().compareTo(instance) < 0);
+    }
 }
@@ -0,0 +1,843 @@
+package com.idataconnect.jdbfdriver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DBFTest {
+
+    @TempDir
+    File tempDir;
+
+    private File dbfFile;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dbfFile = new File(tempDir, "test.dbf");
+
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("ID", DBFField.FieldType.N, 10, 0));
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 20, 0));
+        DBF dbf = DBF.create(dbfFile, fields);
+        for (int i = 1; i <= 5; i++) {
+            dbf.appendBlank();
+            dbf.replace("ID", i);
+            dbf.replace("NAME", "Record " + i);
+        }
+        dbf.close();
+    }
+
+    @Test
+    public void testMemoryMappedRead() throws Exception {
+        DBF dbf = DBF.use(dbfFile, true);
+        assertTrue(dbf.isMemoryMapped());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, dbf.gotoRecord(i));
+            assertEquals(i, dbf.getInt("ID"));
+            assertEquals("Record " + i, dbf.getString("NAME"));
+        }
+
+        // The mapping must follow the file as it grows
+        dbf.appendBlank();
+        dbf.replace("ID", 6);
+        dbf.replace("NAME", "Record 6");
+        assertEquals(6, dbf.gotoRecord(6));
+        assertEquals(6, dbf.getInt("ID"));
+        assertEquals("Record 6", dbf.getString("NAME"));
+        assertEquals(DBF.RECORD_NUMBER_EOF, dbf.skip());
+        dbf.close();
+    }
+
+    @Test
+    public void testHeaderRefreshPolicy() throws Exception {
+        DBF reader = DBF.use(dbfFile);
+        reader.setHeaderRefreshPolicy(DBF.HeaderRefreshPolicy.NEVER);
+        DBF writer = DBF.use(dbfFile);
+        writer.appendBlank();
+        writer.replace("ID", 6);
+        writer.close();
+
+        // The appended record is not seen until the header is refreshed
+        assertEquals(DBF.RECORD_NUMBER_EOF, reader.gotoRecord(6));
+        reader.refresh();
+        assertEquals(6, reader.gotoRecord(6));
+        assertEquals(6, reader.getInt("ID"));
+        reader.close();
+    }
+
+    @Test
+    public void testRawGetters() throws Exception {
+        File rawFile = new File(tempDir, "raw.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("AMOUNT", DBFField.FieldType.N, 12, 2));
+        fields.add(new DBFField("BORN", DBFField.FieldType.D, 8, 0));
+        fields.add(new DBFField("ACTIVE", DBFField.FieldType.L, 1, 0));
+        fields.add(new DBFField("BIG", DBFField.FieldType.N, 12, 0));
+        fields.add(new DBFField("HUGE", DBFField.FieldType.N, 20, 0));
+        DBF writer = DBF.create(rawFile, fields);
+        writer.appendBlank();
+        writer.replace("AMOUNT", "-1234.56");
+        writer.replace("BIG", 3000000000L);
+        writer.replace("HUGE", "99999999999999999999");
+        writer.replace("BORN", new DBFDate(8, 1, 1980));
+        writer.replace("ACTIVE", Boolean.TRUE);
+        writer.appendBlank();
+        writer.close();
+
+        DBF dbf = DBF.use(rawFile);
+        dbf.gotoRecord(1);
+        assertEquals(-1234L, dbf.getLong("AMOUNT"));
+        assertEquals(-1234, dbf.getIntRaw(1));
+        assertEquals(3000000000L, dbf.getLong("BIG"));
+        assertThrows(ArithmeticException.class, () -> dbf.getIntRaw("BIG"));
+        assertThrows(ArithmeticException.class, () -> dbf.getLong("HUGE"));
+        assertEquals(new java.math.BigDecimal("99999999999999999999"),
+                new java.math.BigDecimal(dbf.getValue("HUGE").getValue().toString()));
+        assertEquals(-1234.56, dbf.getDouble("AMOUNT"));
+        assertEquals(dbf.getValue("AMOUNT").getDouble(), dbf.getDouble(1));
+        assertEquals(java.time.LocalDate.of(1980, 8, 1).toEpochDay(), dbf.getEpochDay("BORN"));
+        assertTrue(dbf.isTrue("ACTIVE"));
+        assertThrows(IllegalStateException.class, () -> dbf.getEpochDay("AMOUNT"));
+
+        // The raw record follows replaced values
+        dbf.replace("AMOUNT", 99.5);
+        assertEquals(99.5, dbf.getDouble("AMOUNT"));
+
+        dbf.gotoRecord(2);
+        assertEquals(0L, dbf.getLong("AMOUNT"));
+        assertEquals(DBFDate.BLANK_EPOCH_DAY, dbf.getEpochDay("BORN"));
+        assertNull(dbf.getLocalDate("BORN"));
+        assertFalse(dbf.isTrue("ACTIVE"));
+
+        // Dates may be given as LocalDate or java.util.Date
+        dbf.replace("BORN", java.time.LocalDate.of(2001, 2, 3));
+        assertEquals(java.time.LocalDate.of(2001, 2, 3), dbf.getLocalDate("BORN"));
+        assertEquals(new DBFDate(2, 3, 2001), dbf.getDate("BORN"));
+        dbf.replace("BORN", new java.util.GregorianCalendar(2010, java.util.Calendar.DECEMBER, 31).getTime());
+        assertEquals(java.time.LocalDate.of(2010, 12, 31), dbf.getLocalDate("BORN"));
+        dbf.close();
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        // Enough records to span more than one chunk
+        for (int i = 6; i <= 3000; i++) {
+            dbf.appendBlank();
+            dbf.replace("ID", i);
+        }
+        dbf.gotoRecord(3);
+        dbf.setDeleted(true);
+
+        int count = 0;
+        long sum = 0;
+        try (RecordCursor cursor = dbf.scan()) {
+            while (cursor.next()) {
+                RecordView record = cursor.record();
+                count++;
+                assertEquals(count, record.getRecordNumber());
+                assertEquals(count, record.getInt("ID"));
+                assertEquals(count == 3, record.isDeleted());
+                sum += record.getLong(1);
+            }
+            assertFalse(cursor.next());
+            assertThrows(IllegalStateException.class, cursor::record);
+        }
+        assertEquals(3000, count);
+        assertEquals(3000L * 3001 / 2, sum);
+        dbf.close();
+    }
+
+    @Test
+    public void testParallelStream() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        for (int i = 6; i <= 10000; i++) {
+            dbf.appendBlank();
+            dbf.replace("ID", i);
+        }
+
+        assertEquals(10000L * 10001 / 2, dbf.stream(true)
+                .mapToLong(record -> record.getLong("ID"))
+                .sum());
+        assertEquals(10000L, dbf.stream(true)
+                .filter(record -> record.getInt("ID") == record.getRecordNumber())
+                .count());
+        assertEquals("Record 2", dbf.stream(false)
+                .skip(1)
+                .findFirst()
+                .get()
+                .getString("NAME"));
+        dbf.close();
+    }
+
+    @Test
+    public void testProjectedScan() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        try (RecordCursor cursor = dbf.scan("NAME")) {
+            assertTrue(cursor.next());
+            RecordView record = cursor.record();
+            assertEquals("Record 1", record.getString("NAME"));
+            DBFValue[] values = record.getValues();
+            assertEquals(1, values.length);
+            assertEquals("Record 1", values[0].getString());
+            assertThrows(IllegalArgumentException.class, () -> record.getLong("ID"));
+        }
+        try (RecordCursor cursor = dbf.scan(2, 1)) {
+            int count = 0;
+            while (cursor.next()) {
+                count++;
+                DBFValue[] values = cursor.record().getValues();
+                assertEquals("Record " + count, values[0].getString());
+                assertEquals(count, values[1].getInt());
+            }
+            assertEquals(5, count);
+        }
+        assertThrows(IllegalArgumentException.class, () -> dbf.scan("MISSING"));
+        assertThrows(IllegalArgumentException.class, () -> dbf.scan(3));
+        dbf.close();
+    }
+
+    @Test
+    public void testFilteredScan() throws Exception {
+        File filterFile = new File(tempDir, "filter.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("STATUS", DBFField.FieldType.C, 5, 0));
+        fields.add(new DBFField("AMOUNT", DBFField.FieldType.N, 8, 2));
+        fields.add(new DBFField("DUE", DBFField.FieldType.D, 8, 0));
+        DBF dbf = DBF.create(filterFile, fields);
+        for (int i = 1; i <= 20; i++) {
+            dbf.appendBlank();
+            dbf.replace("STATUS", i % 2 == 0 ? "A" : "AB");
+            dbf.replace("AMOUNT", i * 1.5);
+            dbf.replace("DUE", new DBFDate(1, i, 2024));
+        }
+        dbf.gotoRecord(4);
+        dbf.setDeleted(true);
+
+        assertEquals(List.of(2, 6, 8, 10), recordNumbers(dbf.scan(RecordFilters.and(
+                RecordFilters.notDeleted(),
+                RecordFilters.fieldEquals("STATUS", "A"),
+                RecordFilters.numberBetween("AMOUNT", 0, 15)))));
+        assertEquals(List.of(4), recordNumbers(dbf.scan(RecordFilters.deleted())));
+        assertEquals(20, recordNumbers(dbf.scan(RecordFilters.fieldStartsWith("STATUS", "A"))).size());
+        assertEquals(List.of(18, 19, 20), recordNumbers(dbf.scan(RecordFilters.dateBetween("DUE",
+                new DBFDate(1, 18, 2024), new DBFDate(12, 31, 2024)), "DUE")));
+        assertEquals(List.of(1, 2), recordNumbers(dbf.scan(RecordFilters.not(
+                RecordFilters.numberBetween("AMOUNT", 4, 1000)))));
+        assertEquals(List.of(1, 3), recordNumbers(dbf.scan(RecordFilters.or(
+                RecordFilters.numberBetween("AMOUNT", 1.5, 1.5),
+                RecordFilters.numberBetween("AMOUNT", 4.5, 4.5)))));
+        assertThrows(IllegalArgumentException.class,
+                () -> dbf.scan(RecordFilters.numberBetween("STATUS", 0, 1)));
+        dbf.close();
+    }
+
+    private static List<Integer> recordNumbers(RecordCursor cursor) throws IOException {
+        List<Integer> recordNumbers = new ArrayList<>();
+        try (cursor) {
+            while (cursor.next()) {
+                recordNumbers.add(cursor.record().getRecordNumber());
+            }
+        }
+        return recordNumbers;
+    }
+
+    @Test
+    public void testMemoFields() throws Exception {
+        File memoFile = new File(tempDir, "memo.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("ID", DBFField.FieldType.N, 5, 0));
+        fields.add(new DBFField("NOTES", DBFField.FieldType.M, 10, 0));
+        DBF dbf = DBF.create(memoFile, fields);
+        StringBuilder longNote = new StringBuilder();
+        while (longNote.length() < 2000) {
+            longNote.append("A long note. ");
+        }
+        for (int i = 1; i <= 3; i++) {
+            dbf.appendBlank();
+            dbf.replace("ID", i);
+            dbf.replace("NOTES", "Note " + i);
+        }
+        dbf.close();
+
+        dbf = DBF.use(memoFile);
+        for (int i = 1; i <= 3; i++) {
+            dbf.gotoRecord(i);
+            assertEquals("Note " + i, dbf.getString("NOTES"));
+        }
+
+        // A shorter value reuses its block, and a longer one moves
+        File dbtFile = new File(tempDir, "memo.dbt");
+        long dbtLength = dbtFile.length();
+        dbf.gotoRecord(2);
+        dbf.replace("NOTES", "Two");
+        assertEquals(dbtLength, dbtFile.length());
+        dbf.gotoRecord(1);
+        dbf.replace("NOTES", longNote.toString());
+        assertTrue(dbtFile.length() > dbtLength);
+        dbf.close();
+
+        dbf = DBF.use(memoFile);
+        dbf.gotoRecord(1);
+        assertEquals(longNote.toString(), dbf.getString("NOTES"));
+        dbf.gotoRecord(2);
+        assertEquals("Two", dbf.getString("NOTES"));
+        dbf.gotoRecord(3);
+        assertEquals("Note 3", dbf.getString("NOTES"));
+        try (RecordCursor cursor = dbf.scan("NOTES")) {
+            assertTrue(cursor.next());
+            assertEquals(longNote.toString(), cursor.record().getString(2));
+        }
+        dbf.close();
+
+        // Memo values are not read until they are requested
+        assertTrue(dbtFile.renameTo(new File(tempDir, "moved.dbt")));
+        dbf = DBF.use(memoFile);
+        dbf.gotoRecord(2);
+        assertEquals(2, dbf.getInt("ID"));
+        DBFValue notes = dbf.getValue("NOTES");
+        assertThrows(java.io.UncheckedIOException.class, notes::getString);
+        dbf.close();
+    }
+
+    @Test
+    public void testMemoStreams() throws Exception {
+        File blobFile = new File(tempDir, "blob.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("ID", DBFField.FieldType.N, 5, 0));
+        fields.add(new DBFField("IMAGE", DBFField.FieldType.B, 10, 0));
+        DBF dbf = DBF.create(blobFile, fields);
+        dbf.appendBlank();
+        dbf.replace("ID", 1);
+        assertEquals(0, dbf.openMemoStream("IMAGE").readAllBytes().length);
+
+        byte[] image = new byte[100000];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (i * 31);
+        }
+        try (java.io.OutputStream out = dbf.openMemoOutputStream("IMAGE")) {
+            assertThrows(IllegalStateException.class, () -> dbf.replace("IMAGE", new byte[1]));
+            for (int i = 0; i < image.length; i += 1000) {
+                out.write(image, i, 1000);
+            }
+        }
+        assertArrayEquals(image, dbf.getValue("IMAGE").getBytes());
+        dbf.replace("IMAGE", new byte[] { 1, 2, 3 });
+        dbf.close();
+
+        DBF reader = DBF.use(blobFile);
+        reader.gotoRecord(1);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) reader.getValue("IMAGE").getValue());
+        try (java.io.InputStream in = reader.openMemoStream(2)) {
+            assertEquals(3, in.available());
+            assertEquals(1, in.read());
+            assertArrayEquals(new byte[] { 2, 3 }, in.readAllBytes());
+        }
+        assertThrows(IllegalStateException.class, () -> reader.openMemoStream("ID"));
+
+        // A stream which is never closed blocks memo writes until the DBF
+        // is closed, which abandons its value
+        java.io.OutputStream abandoned = reader.openMemoOutputStream("IMAGE");
+        abandoned.write(image, 0, 1000);
+        assertThrows(IllegalStateException.class, () -> reader.replace("IMAGE", new byte[1]));
+        reader.close();
+        assertThrows(IOException.class, abandoned::close);
+
+        DBF writer = DBF.use(blobFile);
+        writer.gotoRecord(1);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, writer.getValue("IMAGE").getBytes());
+        writer.replace("IMAGE", image);
+        assertArrayEquals(image, writer.getValue("IMAGE").getBytes());
+        writer.close();
+    }
+
+    @Test
+    public void testMemoCache() throws Exception {
+        File memoFile = new File(tempDir, "cached.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("NOTES", DBFField.FieldType.M, 10, 0));
+        DBF dbf = DBF.create(memoFile, fields);
+        for (int i = 1; i <= 3; i++) {
+            dbf.appendBlank();
+            dbf.replace("NOTES", "Note " + i);
+        }
+        assertEquals(0, dbf.getMemoCacheSize());
+        dbf.setMemoCacheSize(1024 * 1024);
+        assertEquals(1024 * 1024, dbf.getMemoCacheSize());
+
+        dbf.gotoRecord(1);
+        assertEquals("Note 1", dbf.getString("NOTES"));
+
+        // Rewritten values are dropped from the cache
+        dbf.replace("NOTES", "Changed");
+        dbf.gotoRecord(2);
+        assertEquals("Note 2", dbf.getString("NOTES"));
+        dbf.gotoRecord(1);
+        assertEquals("Changed", dbf.getString("NOTES"));
+
+        MemoCache cache = new MemoCache(24);
+        cache.put(1, "12345678");
+        cache.put(2, "abc");
+        assertEquals("12345678", cache.get(1));
+        cache.put(3, "xyz");
+        assertNull(cache.get(2));
+        assertEquals("xyz", cache.get(3));
+        cache.invalidate(3);
+        assertNull(cache.get(3));
+
+        // Values read before an invalidation are not cached
+        long stamp = cache.stamp();
+        cache.invalidate(1);
+        cache.put(1, "stale", stamp);
+        assertNull(cache.get(1));
+        cache.put(1, "fresh", cache.stamp());
+        assertEquals("fresh", cache.get(1));
+        dbf.close();
+    }
+
+    @Test
+    public void testFieldLookup() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        assertEquals(1, dbf.getFieldNumberByName("ID"));
+        assertEquals(2, dbf.getFieldNumberByName("name"));
+        assertEquals(0, dbf.getFieldNumberByName("MISSING"));
+        assertEquals(0, dbf.getFieldNumberByName(null));
+        DBFStructure structure = dbf.getStructure();
+        assertEquals(1, structure.getFieldOffset(0));
+        assertEquals(11, structure.getFieldOffset(1));
+        assertEquals(20, structure.getFieldLength(1));
+        assertEquals(DBFField.FieldType.C, structure.getFieldType(1));
+
+        dbf.gotoRecord(2);
+        dbf.replace("name", "Renamed");
+        dbf.gotoRecord(2);
+        assertEquals("Renamed", dbf.getString("NAME"));
+        assertEquals(2, dbf.getInt("ID"));
+        dbf.close();
+    }
+
+    @Test
+    public void testCodePage() throws Exception {
+        File cyrillicFile = new File(tempDir, "cyrillic.dbf");
+        DBFStructure structure = new DBFStructure();
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 10, 0));
+        structure.setFields(fields);
+        structure.setCharset(java.nio.charset.Charset.forName("IBM866"));
+        DBF dbf = DBF.create(cyrillicFile, structure);
+        dbf.appendBlank();
+        dbf.replace("NAME", "Привет");
+        dbf.close();
+
+        byte[] bytes = java.nio.file.Files.readAllBytes(cyrillicFile.toPath());
+        assertEquals(0x26, bytes[29] & 0xff);
+
+        dbf = DBF.use(cyrillicFile);
+        assertEquals(0x26, dbf.getStructure().getCodePage());
+        dbf.gotoRecord(1);
+        assertEquals("Привет", dbf.getString("NAME"));
+        try (RecordCursor cursor = dbf.scan(RecordFilters.fieldEquals("NAME", "Привет"))) {
+            assertTrue(cursor.next());
+            assertEquals("Привет", cursor.record().getString(1));
+        }
+        dbf.close();
+
+        TextCodec latin1 = TextCodec.forCharset(java.nio.charset.StandardCharsets.ISO_8859_1);
+        byte[] data = "  caf\u00e9  ".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+        assertEquals("caf\u00e9", latin1.decodeTrimmed(data, 0, data.length));
+        TextCodec ansi = TextCodec.forCharset(java.nio.charset.Charset.forName("windows-1252"));
+        assertEquals("\u20ac", ansi.decode(new byte[] { (byte) 0x80 }, 0, 1));
+    }
+
+    @Test
+    public void testCursors() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        DBF cursor = dbf.newCursor();
+        assertSame(dbf.getStructure(), cursor.getStructure());
+        assertEquals(1, cursor.recno());
+        DBFField firstField = dbf.getStructure().getFields().get(0);
+
+        // Each cursor moves on its own
+        dbf.gotoRecord(4);
+        cursor.skip();
+        assertEquals("Record 4", dbf.getString("NAME"));
+        assertEquals("Record 2", cursor.getString("NAME"));
+        // Re-reading an unchanged header keeps the fields already compiled
+        assertSame(firstField, cursor.getStructure().getFields().get(0));
+
+        // Writes through one cursor are seen by the others
+        cursor.replace("NAME", "Changed");
+        dbf.gotoRecord(2);
+        assertEquals("Changed", dbf.getString("NAME"));
+
+        // The file stays open until the last cursor is closed
+        dbf.close();
+        cursor.gotoRecord(5);
+        assertEquals("Record 5", cursor.getString("NAME"));
+        assertThrows(IOException.class, dbf::newCursor);
+        cursor.close();
+        cursor.close();
+        assertThrows(IOException.class, cursor::newCursor);
+    }
+
+    @Test
+    public void testEdit() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        DBF reader = dbf.newCursor();
+        dbf.gotoRecord(3);
+        dbf.beginEdit();
+        assertTrue(dbf.isEditing());
+        assertThrows(IllegalStateException.class, dbf::beginEdit);
+        dbf.replace("ID", 33);
+        dbf.replace("NAME", "Edited");
+        dbf.delete();
+        assertEquals("Edited", dbf.getString("NAME"));
+        assertTrue(dbf.deleted());
+
+        // Nothing reaches the file until the edit is committed
+        reader.gotoRecord(3);
+        assertEquals("Record 3", reader.getString("NAME"));
+        dbf.commit();
+        assertFalse(dbf.isEditing());
+        reader.gotoRecord(3);
+        assertEquals(33, reader.getInt("ID"));
+        assertEquals("Edited", reader.getString("NAME"));
+        assertTrue(reader.deleted());
+
+        // A cancelled edit restores the record
+        dbf.beginEdit();
+        dbf.replace("NAME", "Cancelled");
+        dbf.undelete();
+        dbf.cancelEdit();
+        assertEquals("Edited", dbf.getString("NAME"));
+        assertTrue(dbf.deleted());
+        assertThrows(IllegalStateException.class, dbf::commit);
+
+        // Moving the record pointer commits the edit
+        dbf.beginEdit();
+        dbf.replace("NAME", "Moved");
+        dbf.gotoRecord(1);
+        assertFalse(dbf.isEditing());
+        reader.gotoRecord(3);
+        assertEquals("Moved", reader.getString("NAME"));
+        reader.close();
+        dbf.close();
+    }
+
+    @Test
+    public void testAppendAll() throws Exception {
+        File bulkFile = new File(tempDir, "bulk.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("ID", DBFField.FieldType.N, 10, 0));
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 20, 0));
+        fields.add(new DBFField("DUE", DBFField.FieldType.D, 8, 0));
+        fields.add(new DBFField("NOTES", DBFField.FieldType.M, 10, 0));
+        DBF dbf = DBF.create(bulkFile, fields);
+        dbf.appendBlank();
+
+        // Enough rows to take several writes
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            rows.add(new Object[] { i, "Name " + i, java.time.LocalDate.of(2024, 1, 1).plusDays(i),
+                    i % 500 == 0 ? "Note " + i : null });
+        }
+        rows.add(new Object[] { 2001 });
+        rows.add(null);
+        assertEquals(2002, dbf.appendAll(rows));
+        assertEquals(2003, dbf.getStructure().getNumberOfRecords());
+        assertEquals(2003, dbf.recno());
+        assertEquals(0, dbf.appendAll(new ArrayList<>()));
+        dbf.close();
+
+        byte[] bytes = java.nio.file.Files.readAllBytes(bulkFile.toPath());
+        assertEquals(0x1a, bytes[bytes.length - 1]);
+
+        dbf = DBF.use(bulkFile);
+        assertEquals(2003, dbf.getStructure().getNumberOfRecords());
+        assertEquals("", dbf.getString("NAME"));
+        dbf.gotoRecord(1001);
+        assertEquals(1000, dbf.getInt("ID"));
+        assertEquals("Name 1000", dbf.getString("NAME"));
+        assertEquals(java.time.LocalDate.of(2024, 1, 1).plusDays(1000), dbf.getLocalDate("DUE"));
+        assertEquals("Note 1000", dbf.getString("NOTES"));
+        dbf.gotoRecord(1002);
+        assertEquals("", dbf.getString("NOTES"));
+        dbf.gotoRecord(2002);
+        assertEquals(2001, dbf.getInt("ID"));
+        assertNull(dbf.getLocalDate("DUE"));
+        dbf.close();
+    }
+
+    @Test
+    public void testHeaderWriteBehind() throws Exception {
+        File headerFile = new File(tempDir, "header.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 20, 0));
+        DBF dbf = DBF.create(headerFile, fields);
+        dbf.setHeaderWriteBehindEnabled(true);
+        dbf.setHeaderFlushInterval(0);
+        assertTrue(dbf.isHeaderWriteBehindEnabled());
+
+        for (int i = 1; i <= 3; i++) {
+            dbf.appendBlank();
+            dbf.replace("NAME", "Name " + i);
+        }
+        assertEquals(3, dbf.getStructure().getNumberOfRecords());
+        assertEquals(0, recordCountOnDisk(headerFile));
+        dbf.gotoRecord(2);
+        assertEquals("Name 2", dbf.getString("NAME"));
+
+        dbf.sync();
+        assertEquals(3, recordCountOnDisk(headerFile));
+
+        dbf.appendBlank();
+        assertEquals(3, recordCountOnDisk(headerFile));
+        dbf.close();
+        assertEquals(4, recordCountOnDisk(headerFile));
+
+        dbf = DBF.use(headerFile);
+        assertEquals(4, dbf.getStructure().getNumberOfRecords());
+        assertEquals(DBFDate.getCurrentDate(), dbf.getStructure().getLastUpdated());
+        dbf.close();
+    }
+
+    @Test
+    public void testDurabilityPolicy() throws Exception {
+        File durableFile = new File(tempDir, "durable.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 20, 0));
+        fields.add(new DBFField("NOTES", DBFField.FieldType.M, 10, 0));
+        DBF dbf = DBF.create(durableFile, fields);
+        assertEquals(DBF.DurabilityPolicy.NONE, dbf.getDurabilityPolicy());
+        assertThrows(IllegalArgumentException.class, () -> dbf.setDurabilityPolicy(null));
+        assertThrows(IllegalArgumentException.class, () -> dbf.setDurabilityChanges(0));
+
+        for (DBF.DurabilityPolicy policy : DBF.DurabilityPolicy.values()) {
+            dbf.setDurabilityPolicy(policy);
+            dbf.setDurabilityChanges(2);
+            dbf.setDurabilityInterval(0);
+            dbf.appendBlank();
+            dbf.replace("NAME", policy.name());
+            dbf.replace("NOTES", "Notes for " + policy);
+            dbf.beginEdit();
+            dbf.replace("NAME", policy.name().toLowerCase());
+            dbf.commit();
+        }
+        DBF cursor = dbf.newCursor();
+        assertEquals(DBF.DurabilityPolicy.COMMIT, cursor.getDurabilityPolicy());
+        cursor.close();
+        dbf.close();
+
+        DBF reader = DBF.use(durableFile);
+        assertEquals(DBF.DurabilityPolicy.values().length, reader.getStructure().getNumberOfRecords());
+        reader.gotoRecord(3);
+        assertEquals("changes", reader.getString("NAME"));
+        assertEquals("Notes for CHANGES", reader.getString("NOTES"));
+        reader.close();
+    }
+
+    @Test
+    public void testAsyncWrites() throws Exception {
+        File asyncFile = new File(tempDir, "async.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("ID", DBFField.FieldType.N, 10, 0));
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 20, 0));
+        DBF dbf = DBF.create(asyncFile, fields);
+        dbf.setDurabilityPolicy(DBF.DurabilityPolicy.COMMIT);
+
+        List<java.util.concurrent.CompletableFuture<Integer>> appends = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            appends.add(dbf.appendAsync(new Object[] { i, "Name " + i }));
+        }
+        for (int i = 1; i <= 500; i++) {
+            assertEquals(i, appends.get(i - 1).get());
+        }
+
+        assertEquals("Name 7", dbf.replaceAsync(7, "NAME", "Seven").get());
+        dbf.replaceAsync(8, "NAME", "Eight");
+        java.util.concurrent.CompletableFuture<Void> deleted = dbf.deleteAsync(8);
+        java.util.concurrent.CompletableFuture<Object> invalid = dbf.replaceAsync(501, "NAME", "None");
+        assertThrows(IllegalArgumentException.class, () -> dbf.replaceAsync(1, "MISSING", 1));
+        deleted.get();
+        java.util.concurrent.ExecutionException ex = assertThrows(
+                java.util.concurrent.ExecutionException.class, invalid::get);
+        assertTrue(ex.getCause() instanceof IllegalArgumentException);
+
+        // An error fails the writes of its batch, and the writer carries on
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("Broken value");
+            }
+        };
+        java.util.concurrent.CompletableFuture<Integer> failed
+                = dbf.appendAsync(new Object[] { 0, broken });
+        ex = assertThrows(java.util.concurrent.ExecutionException.class, failed::get);
+        assertTrue(ex.getCause() instanceof AssertionError);
+        java.util.concurrent.CompletableFuture<Integer> last = dbf.appendAsync(null);
+        dbf.close();
+        assertEquals(501, last.get());
+        assertThrows(IOException.class, () -> dbf.appendAsync(null));
+
+        DBF reader = DBF.use(asyncFile);
+        assertEquals(501, reader.getStructure().getNumberOfRecords());
+        reader.gotoRecord(7);
+        assertEquals("Seven", reader.getString("NAME"));
+        reader.gotoRecord(8);
+        assertEquals("Eight", reader.getString("NAME"));
+        assertTrue(reader.deleted());
+        reader.gotoRecord(500);
+        assertEquals(500, reader.getInt("ID"));
+        reader.close();
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        File txFile = new File(tempDir, "tx.dbf");
+        File journalFile = new File(tempDir, "tx.jnl");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("NAME", DBFField.FieldType.C, 20, 0));
+        fields.add(new DBFField("NOTES", DBFField.FieldType.M, 10, 0));
+        DBF dbf = DBF.create(txFile, fields);
+        for (int i = 1; i <= 2; i++) {
+            dbf.appendBlank();
+            dbf.replace("NAME", "Name " + i);
+            dbf.replace("NOTES", "Notes " + i);
+        }
+        final long originalLength = txFile.length();
+        assertThrows(IllegalStateException.class, dbf::rollback);
+
+        // Rollback restores changed records and removes appended ones
+        dbf.beginTransaction();
+        assertTrue(dbf.isTransactionActive());
+        assertTrue(journalFile.exists());
+        assertEquals(1, java.nio.file.Files.readAllBytes(txFile.toPath())[14]);
+        assertThrows(IllegalStateException.class, dbf::beginTransaction);
+        dbf.gotoRecord(1);
+        dbf.replace("NAME", "Changed");
+        dbf.replace("NOTES", "Changed notes which are much longer than the original notes");
+        dbf.gotoRecord(2);
+        dbf.delete();
+        for (int i = 0; i < 50; i++) {
+            dbf.appendBlank();
+        }
+        dbf.rollback();
+        assertFalse(dbf.isTransactionActive());
+        assertFalse(journalFile.exists());
+        assertEquals(originalLength, txFile.length());
+        assertEquals(2, dbf.getStructure().getNumberOfRecords());
+        assertFalse(dbf.getStructure().isTransactionActive());
+        dbf.gotoRecord(1);
+        assertEquals("Name 1", dbf.getString("NAME"));
+        assertEquals("Notes 1", dbf.getString("NOTES"));
+        dbf.gotoRecord(2);
+        assertFalse(dbf.deleted());
+
+        // Other cursors read their records again after a rollback
+        DBF other = dbf.newCursor();
+        dbf.beginTransaction();
+        dbf.gotoRecord(2);
+        dbf.replace("NAME", "Rolled back");
+        other.gotoRecord(2);
+        assertEquals("Rolled back", other.getString("NAME"));
+        dbf.rollback();
+        assertEquals("Name 2", other.getString("NAME"));
+        other.close();
+
+        // Closing another cursor leaves the transaction in progress
+        dbf.beginTransaction();
+        dbf.appendBlank();
+        dbf.newCursor().close();
+        assertTrue(dbf.isTransactionActive());
+        assertEquals(3, dbf.getStructure().getNumberOfRecords());
+        dbf.commitTransaction();
+        assertEquals(3, dbf.getStructure().getNumberOfRecords());
+        dbf.gotoRecord(2);
+
+        // Commit keeps them
+        dbf.beginTransaction();
+        dbf.replace("NAME", "Committed");
+        dbf.appendBlank();
+        dbf.commitTransaction();
+        assertFalse(journalFile.exists());
+        assertEquals(0, java.nio.file.Files.readAllBytes(txFile.toPath())[14]);
+
+        // A crash during a transaction is rolled back on open. The crash is
+        // simulated by putting back the files as they were mid-transaction.
+        File dbtFile = new File(tempDir, "tx.dbt");
+        final byte[] committedDbf = java.nio.file.Files.readAllBytes(txFile.toPath());
+        dbf.beginTransaction();
+        dbf.gotoRecord(1);
+        dbf.replace("NAME", "Crashed");
+        dbf.replace("NOTES", "Crashed notes");
+        dbf.appendBlank();
+        dbf.sync();
+        final byte[] crashedDbf = java.nio.file.Files.readAllBytes(txFile.toPath());
+        final byte[] crashedDbt = java.nio.file.Files.readAllBytes(dbtFile.toPath());
+        final byte[] crashedJournal = java.nio.file.Files.readAllBytes(journalFile.toPath());
+        dbf.close();
+        assertFalse(journalFile.exists());
+        java.nio.file.Files.write(txFile.toPath(), crashedDbf);
+        java.nio.file.Files.write(dbtFile.toPath(), crashedDbt);
+        java.nio.file.Files.write(journalFile.toPath(), crashedJournal);
+
+        DBF recovered = DBF.use(txFile);
+        assertFalse(journalFile.exists());
+        assertFalse(recovered.getStructure().isTransactionActive());
+        assertArrayEquals(committedDbf, java.nio.file.Files.readAllBytes(txFile.toPath()));
+        assertEquals(4, recovered.getStructure().getNumberOfRecords());
+        assertEquals("Name 1", recovered.getString("NAME"));
+        assertEquals("Notes 1", recovered.getString("NOTES"));
+        recovered.gotoRecord(2);
+        assertEquals("Committed", recovered.getString("NAME"));
+        recovered.close();
+    }
+
+    @Test
+    public void testBulkLoadRetry() throws Exception {
+        File bulkFile = new File(tempDir, "bulk.dbf");
+        List<DBFField> fields = new ArrayList<>();
+        fields.add(new DBFField("ID", DBFField.FieldType.N, 10, 0));
+        DBF dbf = DBF.create(bulkFile, fields);
+        com.idataconnect.jdbfdriver.index.MDX mdx = com.idataconnect.jdbfdriver.index.MDX.create(
+                new File(tempDir, "bulk.mdx"), "BULK");
+        mdx.addTag("ID", "ID", com.idataconnect.jdbfdriver.index.IndexDataType.NUMERIC, false, false);
+        mdx.setTag("ID");
+        dbf.setIndex(mdx);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 200; i >= 1; i--) {
+            rows.add(new Object[] { i });
+        }
+        dbf.beginBulkLoad();
+        dbf.appendAll(rows);
+
+        // A build which fails keeps the keys, so it can be retried
+        Journal journal = Journal.create(new File(tempDir, "bulk.jnl"));
+        mdx.setJournal(journal);
+        journal.close();
+        assertThrows(IOException.class, dbf::endBulkLoad);
+        mdx.setJournal(null);
+        dbf.endBulkLoad();
+
+        assertEquals(200, mdx.gotoTop());
+        for (int i = 199; i >= 1; i--) {
+            assertEquals(i, mdx.next());
+        }
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx.next());
+        mdx.close();
+        dbf.close();
+    }
+
+    private static int recordCountOnDisk(File file) throws IOException {
+        byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+        return java.nio.ByteBuffer.wrap(bytes, 4, 4).order(java.nio.ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+}
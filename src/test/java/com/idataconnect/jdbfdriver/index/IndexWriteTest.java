@@ -1,6 +1,7 @@
 package com.idataconnect.jdbfdriver.index;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
@@ -102,4 +103,242 @@ public class IndexWriteTest {
         assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.next());
         mdx2.close();
     }
+
+    @Test
+    public void testMdxBulkLoad() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        File mdxFile = new File(tempDir, "bulk.mdx");
+        MDX mdx = MDX.create(mdxFile, "TEST");
+        mdx.addTag("id_idx", "ID", IndexDataType.NUMERIC, false, false);
+        mdx.setTag("id_idx");
+        dbf.setIndex(mdx);
+
+        // Enough keys for more than one internal level, in descending order
+        int count = 500;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = count; i >= 1; i--) {
+            rows.add(new Object[] { i, "Record " + i });
+        }
+        dbf.beginBulkLoad();
+        assertEquals(count, dbf.appendAll(rows));
+        dbf.endBulkLoad();
+
+        // A later insert goes through the normal path into the built tree
+        dbf.appendBlank();
+        dbf.replace("ID", count + 1);
+
+        mdx.close();
+        dbf.close();
+
+        MDX mdx2 = MDX.open(mdxFile);
+        mdx2.setTag("id_idx");
+
+        assertEquals(count, mdx2.gotoTop());
+        for (int i = count - 1; i >= 1; i--) {
+            assertEquals(i, mdx2.next());
+        }
+        assertEquals(count + 1, mdx2.next());
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.next());
+
+        assertEquals(count - 249, mdx2.find(250));
+        assertEquals(count + 1, mdx2.find(count + 1));
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.find(count + 2));
+        mdx2.close();
+    }
+
+    @Test
+    public void testMdxAppendAll() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        File mdxFile = new File(tempDir, "append.mdx");
+        MDX mdx = MDX.create(mdxFile, "TEST");
+        mdx.addTag("id_idx", "ID", IndexDataType.NUMERIC, false, false);
+        mdx.setTag("id_idx");
+        dbf.setIndex(mdx);
+
+        // Enough descending keys to split many blocks below the root, in
+        // more than one write
+        int count = 3000;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = count; i >= 1; i--) {
+            rows.add(new Object[] { i, "Record " + i });
+        }
+        assertEquals(count, dbf.appendAll(rows));
+        assertEquals(count, dbf.recno());
+        assertEquals(1, dbf.getInt("ID"));
+
+        mdx.close();
+        dbf.close();
+
+        MDX mdx2 = MDX.open(mdxFile);
+        mdx2.setTag("id_idx");
+        assertEquals(count, mdx2.gotoTop());
+        for (int i = count - 1; i >= 1; i--) {
+            assertEquals(i, mdx2.next());
+        }
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.next());
+        mdx2.close();
+    }
+
+    @Test
+    public void testMdxAppendAllFailure() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        File mdxFile = new File(tempDir, "failure.mdx");
+        MDX mdx = MDX.create(mdxFile, "TEST");
+        mdx.addTag("id_idx", "ID", IndexDataType.NUMERIC, false, false);
+        mdx.setTag("id_idx");
+        dbf.setIndex(mdx);
+
+        // One full write of 2114 records, then a row which cannot be encoded
+        // part way through the next write
+        int written = 65536 / 31;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= written + 10; i++) {
+            rows.add(new Object[] { i, "Record " + i });
+        }
+        rows.add(new Object[] { 0, new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("Broken value");
+            }
+        } });
+        assertThrows(IllegalStateException.class, () -> dbf.appendAll(rows));
+        assertEquals(written, dbf.getStructure().getNumberOfRecords());
+
+        // Later appends take the next record numbers
+        dbf.appendBlank();
+        dbf.replace("ID", written + 1);
+        mdx.close();
+        dbf.close();
+
+        DBF reader = DBF.use(dbfFile);
+        assertEquals(written + 1, reader.getStructure().getNumberOfRecords());
+        reader.close();
+        MDX mdx2 = MDX.open(mdxFile);
+        mdx2.setTag("id_idx");
+        assertEquals(1, mdx2.gotoTop());
+        for (int i = 2; i <= written + 1; i++) {
+            assertEquals(i, mdx2.next());
+        }
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.next());
+        mdx2.close();
+    }
+
+    @Test
+    public void testMdxAsyncWrites() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        File mdxFile = new File(tempDir, "async.mdx");
+        MDX mdx = MDX.create(mdxFile, "TEST");
+        mdx.addTag("id_idx", "ID", IndexDataType.NUMERIC, false, false);
+        mdx.setTag("id_idx");
+        dbf.setIndex(mdx);
+
+        // An edit pending on close is committed while the index is open
+        for (int i = 1; i < 5; i++) {
+            dbf.appendAsync(new Object[] { i, "Record " + i });
+        }
+        assertEquals(5, dbf.appendAsync(new Object[] { 5, "Record 5" }).get());
+        dbf.gotoRecord(5);
+        dbf.beginEdit();
+        dbf.replace("ID", 6);
+        dbf.close();
+
+        MDX mdx2 = MDX.open(mdxFile);
+        mdx2.setTag("id_idx");
+        assertEquals(4, mdx2.find(4));
+        assertEquals(5, mdx2.find(6));
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.find(5));
+
+        // Closing the cursor which owns the index stops the writer using it,
+        // and other cursors can go on writing
+        DBF owner = DBF.use(dbfFile);
+        owner.setIndex(mdx2);
+        DBF other = owner.newCursor();
+        owner.appendAsync(new Object[] { 7, "Record 7" });
+        owner.close();
+        assertEquals(7, other.appendAsync(new Object[] { 8, "Record 8" }).get());
+        other.close();
+
+        MDX mdx3 = MDX.open(mdxFile);
+        mdx3.setTag("id_idx");
+        assertEquals(6, mdx3.find(7));
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx3.find(8));
+        mdx3.close();
+    }
+
+    @Test
+    public void testMdxCharacterKeys() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        File mdxFile = new File(tempDir, "chars.mdx");
+        MDX mdx = MDX.create(mdxFile, "TEST");
+        // The expression is 4 characters long, so the keys fill their
+        // 4 byte slots without any padding
+        mdx.addTag("name_idx", "NAME", IndexDataType.CHARACTER, false, false);
+        mdx.setTag("name_idx");
+        dbf.setIndex(mdx);
+
+        // Enough keys for internal blocks, differing only in their last
+        // 4 bytes, inserted out of order
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            int value = (i * 7919) % count + 1;
+            dbf.appendBlank();
+            dbf.replace("NAME", String.format("%04d", value));
+        }
+
+        mdx.close();
+        dbf.close();
+
+        MDX mdx2 = MDX.open(mdxFile);
+        mdx2.setTag("name_idx");
+        dbf = DBF.use(dbfFile);
+        dbf.gotoRecord(mdx2.gotoTop());
+        assertEquals("0001", dbf.getString("NAME"));
+        for (int i = 2; i <= count; i++) {
+            dbf.gotoRecord(mdx2.next());
+            assertEquals(String.format("%04d", i), dbf.getString("NAME"));
+        }
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx2.next());
+        for (int i = 1; i <= count; i += 37) {
+            dbf.gotoRecord(mdx2.find(String.format("%04d", i)));
+            assertEquals(String.format("%04d", i), dbf.getString("NAME"));
+        }
+        dbf.close();
+        mdx2.close();
+    }
+
+    @Test
+    public void testMdxRollback() throws Exception {
+        DBF dbf = DBF.use(dbfFile);
+        File mdxFile = new File(tempDir, "rollback.mdx");
+        MDX mdx = MDX.create(mdxFile, "TEST");
+        mdx.addTag("id_idx", "ID", IndexDataType.NUMERIC, false, false);
+        mdx.setTag("id_idx");
+        dbf.setIndex(mdx);
+        for (int i = 1; i <= 10; i++) {
+            dbf.appendBlank();
+            dbf.replace("ID", i);
+        }
+
+        // Enough keys to split blocks during the transaction
+        dbf.beginTransaction();
+        for (int i = 11; i <= 100; i++) {
+            dbf.appendBlank();
+            dbf.replace("ID", i);
+        }
+        dbf.rollback();
+
+        assertEquals(10, dbf.getStructure().getNumberOfRecords());
+        assertEquals(1, mdx.gotoTop());
+        for (int i = 2; i <= 10; i++) {
+            assertEquals(i, mdx.next());
+        }
+        assertEquals(DBF.RECORD_NUMBER_EOF, mdx.next());
+
+        // The index still takes new keys after the rollback
+        dbf.appendBlank();
+        dbf.replace("ID", 11);
+        assertEquals(11, mdx.find(11));
+        mdx.close();
+        dbf.close();
+    }
 }